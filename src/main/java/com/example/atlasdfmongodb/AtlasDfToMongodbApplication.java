@@ -11,7 +11,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
     basePackages = "com.example.atlasdfmongodb.repository",
     excludeFilters = @org.springframework.context.annotation.ComponentScan.Filter(
         type = org.springframework.context.annotation.FilterType.REGEX,
-        pattern = ".*ProcessControlRepository|.*ProcessLogRepository"
+        pattern = ".*ProcessControlRepository|.*ProcessLogRepository|.*LoadDataRepository"
     )
 )
 public class AtlasDfToMongodbApplication {
@@ -11,10 +11,10 @@ import org.springframework.data.mongodb.repository.config.EnableMongoRepositorie
     mongoTemplateRef = "controlMongoTemplate",
     includeFilters = @org.springframework.context.annotation.ComponentScan.Filter(
         type = org.springframework.context.annotation.FilterType.REGEX,
-        pattern = ".*ProcessControlRepository|.*ProcessLogRepository"
+        pattern = ".*ProcessControlRepository|.*ProcessLogRepository|.*LoadDataRepository"
     )
 )
 public class ControlRepositoryConfig {
-    // Esta configuração garante que os repositórios ProcessControlRepository e ProcessLogRepository
-    // usem o controlMongoTemplate, direcionando-os para o banco de dados control_db
+    // Esta configuração garante que os repositórios ProcessControlRepository, ProcessLogRepository
+    // e LoadDataRepository usem o controlMongoTemplate, direcionando-os para o banco de dados control_db
 }
\ No newline at end of file
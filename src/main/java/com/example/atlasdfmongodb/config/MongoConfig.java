@@ -1,17 +1,40 @@
 package com.example.atlasdfmongodb.config;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandStartedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.mongodb.DefaultMongoCommandTagsProvider;
+import io.micrometer.core.instrument.binder.mongodb.DefaultMongoConnectionPoolTagsProvider;
+import io.micrometer.core.instrument.binder.mongodb.MongoCommandTagsProvider;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsConnectionPoolListener;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class MongoConfig {
 
+    // Tag que identifica o cliente nas métricas mongodb.driver.pool.* e mongodb.driver.commands
+    private static final String TAG_CLIENTE = "mongodb.client";
+
     // Conexão Principal - Banco Bradesco
     @Value("${spring.data.mongodb.uri}")
     private String primaryMongoUri;
@@ -33,20 +56,42 @@ public class MongoConfig {
     @Value("${mongodb.control.database}")
     private String controlDatabase;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Perfis de pool, compressão, timeouts e read preference de cada cliente
+    @Bean
+    @ConfigurationProperties("mongodb.client.primary")
+    public PerfilClienteMongo perfilClientePrimary() {
+        return new PerfilClienteMongo();
+    }
+
+    @Bean
+    @ConfigurationProperties("mongodb.client.flat")
+    public PerfilClienteMongo perfilClienteFlat() {
+        return new PerfilClienteMongo();
+    }
+
+    @Bean
+    @ConfigurationProperties("mongodb.client.control")
+    public PerfilClienteMongo perfilClienteControl() {
+        return new PerfilClienteMongo();
+    }
+
     @Bean
     @Primary
     public MongoClient primaryMongoClient() {
-        return MongoClients.create(primaryMongoUri);
+        return criarMongoClient("primary", primaryMongoUri, perfilClientePrimary());
     }
 
     @Bean
     public MongoClient flatMongoClient() {
-        return MongoClients.create(flatMongoUri);
+        return criarMongoClient("flat", flatMongoUri, perfilClienteFlat());
     }
 
     @Bean
     public MongoClient controlMongoClient() {
-        return MongoClients.create(controlMongoUri);
+        return criarMongoClient("control", controlMongoUri, perfilClienteControl());
     }
 
     @Bean(name = {"mongoTemplate", "primaryMongoTemplate"})
@@ -64,4 +109,90 @@ public class MongoConfig {
     public MongoTemplate controlMongoTemplate() {
         return new MongoTemplate(new SimpleMongoClientDatabaseFactory(controlMongoClient(), controlDatabase));
     }
-}
\ No newline at end of file
+
+    /**
+     * Cria o MongoClient a partir da URI, aplicando o perfil por cima das opções da URI
+     * e registrando os listeners de métricas do pool e dos comandos no Actuator
+     */
+    private MongoClient criarMongoClient(String nome, String uri, PerfilClienteMongo perfil) {
+        MongoClientSettings.Builder builder = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(uri));
+
+        builder.applyToConnectionPoolSettings(pool -> {
+            if (perfil.getMaxPoolSize() != null) {
+                pool.maxSize(perfil.getMaxPoolSize());
+            }
+            if (perfil.getMinPoolSize() != null) {
+                pool.minSize(perfil.getMinPoolSize());
+            }
+            if (perfil.getMaxConnecting() != null) {
+                pool.maxConnecting(perfil.getMaxConnecting());
+            }
+            if (perfil.getMaxWaitTimeMs() != null) {
+                pool.maxWaitTime(perfil.getMaxWaitTimeMs(), TimeUnit.MILLISECONDS);
+            }
+            if (perfil.getMaxConnectionIdleTimeMs() != null) {
+                pool.maxConnectionIdleTime(perfil.getMaxConnectionIdleTimeMs(), TimeUnit.MILLISECONDS);
+            }
+            pool.addConnectionPoolListener(new MongoMetricsConnectionPoolListener(meterRegistry,
+                    evento -> Tags.concat(new DefaultMongoConnectionPoolTagsProvider().connectionPoolTags(evento),
+                            TAG_CLIENTE, nome)));
+        });
+
+        builder.applyToSocketSettings(socket -> {
+            if (perfil.getConnectTimeoutMs() != null) {
+                socket.connectTimeout(perfil.getConnectTimeoutMs(), TimeUnit.MILLISECONDS);
+            }
+            if (perfil.getReadTimeoutMs() != null) {
+                socket.readTimeout(perfil.getReadTimeoutMs(), TimeUnit.MILLISECONDS);
+            }
+        });
+
+        if (!perfil.getCompressores().isEmpty()) {
+            builder.compressorList(criarCompressores(perfil.getCompressores()));
+        }
+        if (perfil.getReadPreference() != null && !perfil.getReadPreference().isBlank()) {
+            builder.readPreference(ReadPreference.valueOf(perfil.getReadPreference()));
+        }
+
+        builder.addCommandListener(new MongoMetricsCommandListener(meterRegistry, new TagsComandoCliente(nome)));
+
+        return MongoClients.create(builder.build());
+    }
+
+    private List<MongoCompressor> criarCompressores(List<String> nomes) {
+        List<MongoCompressor> compressores = new ArrayList<>();
+        for (String nome : nomes) {
+            switch (nome.trim().toLowerCase()) {
+                case "zstd" -> compressores.add(MongoCompressor.createZstdCompressor());
+                case "snappy" -> compressores.add(MongoCompressor.createSnappyCompressor());
+                case "zlib" -> compressores.add(MongoCompressor.createZlibCompressor());
+                default -> throw new IllegalArgumentException("Compressor MongoDB não suportado: " + nome);
+            }
+        }
+        return compressores;
+    }
+
+    /**
+     * Tags padrão de comando (comando, collection, cluster, status) acrescidas do nome do cliente
+     */
+    private static class TagsComandoCliente implements MongoCommandTagsProvider {
+
+        private final DefaultMongoCommandTagsProvider padrao = new DefaultMongoCommandTagsProvider();
+        private final String nome;
+
+        TagsComandoCliente(String nome) {
+            this.nome = nome;
+        }
+
+        @Override
+        public void commandStarted(CommandStartedEvent evento) {
+            padrao.commandStarted(evento);
+        }
+
+        @Override
+        public Iterable<Tag> commandTags(CommandEvent evento) {
+            return Tags.concat(padrao.commandTags(evento), TAG_CLIENTE, nome);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.atlasdfmongodb.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Perfil de configuração de um MongoClient (mongodb.client.<nome>.*).
+ * Valores não informados mantêm o que vier na URI ou o padrão do driver.
+ */
+public class PerfilClienteMongo {
+
+    // Pool de conexões
+    private Integer maxPoolSize;
+    private Integer minPoolSize;
+    private Integer maxConnecting;
+    private Long maxWaitTimeMs;
+    private Long maxConnectionIdleTimeMs;
+
+    // Socket
+    private Integer connectTimeoutMs;
+    private Integer readTimeoutMs;
+
+    // Compressão do protocolo em ordem de preferência: zstd, snappy, zlib
+    private List<String> compressores = new ArrayList<>();
+
+    // primary, primaryPreferred, secondary, secondaryPreferred ou nearest
+    private String readPreference;
+
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(Integer maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public Integer getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public void setMinPoolSize(Integer minPoolSize) {
+        this.minPoolSize = minPoolSize;
+    }
+
+    public Integer getMaxConnecting() {
+        return maxConnecting;
+    }
+
+    public void setMaxConnecting(Integer maxConnecting) {
+        this.maxConnecting = maxConnecting;
+    }
+
+    public Long getMaxWaitTimeMs() {
+        return maxWaitTimeMs;
+    }
+
+    public void setMaxWaitTimeMs(Long maxWaitTimeMs) {
+        this.maxWaitTimeMs = maxWaitTimeMs;
+    }
+
+    public Long getMaxConnectionIdleTimeMs() {
+        return maxConnectionIdleTimeMs;
+    }
+
+    public void setMaxConnectionIdleTimeMs(Long maxConnectionIdleTimeMs) {
+        this.maxConnectionIdleTimeMs = maxConnectionIdleTimeMs;
+    }
+
+    public Integer getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(Integer connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public Integer getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public void setReadTimeoutMs(Integer readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public List<String> getCompressores() {
+        return compressores;
+    }
+
+    public void setCompressores(List<String> compressores) {
+        this.compressores = compressores;
+    }
+
+    public String getReadPreference() {
+        return readPreference;
+    }
+
+    public void setReadPreference(String readPreference) {
+        this.readPreference = readPreference;
+    }
+}
@@ -1,15 +1,26 @@
 package com.example.atlasdfmongodb.controller;
 
+import com.example.atlasdfmongodb.model.JobFluxo;
 import com.example.atlasdfmongodb.model.ProcessControl;
 import com.example.atlasdfmongodb.model.ProcessLog;
 import com.example.atlasdfmongodb.repository.ProcessControlRepository;
+import com.example.atlasdfmongodb.service.ConsultaLogsService;
 import com.example.atlasdfmongodb.service.FluxoPrincipalService;
+import com.example.atlasdfmongodb.service.LeaseProcessoService;
+import com.example.atlasdfmongodb.service.ProgressoFluxoService;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -29,21 +40,84 @@ public class FluxoController {
     @Autowired
     private ProcessControlRepository processControlRepository;
 
+    @Autowired
+    private ProgressoFluxoService progressoFluxoService;
+
+    @Autowired
+    private ConsultaLogsService consultaLogsService;
+
+    @Autowired
+    private LeaseProcessoService leaseProcessoService;
+
+    private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
     /**
-     * Executa o fluxo principal manualmente
+     * Submete a execução manual do fluxo principal e responde 202 sem aguardar o término;
+     * com retomar=true retoma o último processo com erro
      */
     @PostMapping("/executar")
-    public ResponseEntity<ProcessControl> executarFluxo() {
+    public ResponseEntity<JobFluxo> executarFluxo(@RequestParam(defaultValue = "false") boolean retomar) {
         try {
-            logger.info("Solicitação de execução manual do fluxo principal recebida");
-            ProcessControl resultado = fluxoPrincipalService.executarManualmente();
-            return ResponseEntity.ok(resultado);
+            logger.info("Solicitação de execução manual do fluxo principal recebida (retomar: {})", retomar);
+            JobFluxo job = fluxoPrincipalService.executarManualmente(retomar);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/fluxo/jobs/" + job.getProcessoId()))
+                    .body(job);
+        } catch (IllegalStateException e) {
+            logger.warn("Execução manual recusada: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             logger.error("Erro durante execução manual do fluxo", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Obtém o estado de um job submetido por /executar
+     */
+    @GetMapping("/jobs/{processoId}")
+    public ResponseEntity<JobFluxo> obterJob(@PathVariable String processoId) {
+        try {
+            return fluxoPrincipalService.obterJob(processoId)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (Exception e) {
+            logger.error("Erro ao obter job do processo: {}", processoId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Cancela um processo em execução neste nó, encerrando a agregação em andamento
+     */
+    @PostMapping("/jobs/{processoId}/cancelar")
+    public ResponseEntity<Map<String, Object>> cancelarJob(@PathVariable String processoId) {
+        try {
+            if (!fluxoPrincipalService.cancelarProcesso(processoId)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("sucesso", false, "mensagem", "Processo não está em execução neste nó"));
+            }
+            return ResponseEntity.accepted()
+                    .body(Map.of("sucesso", true, "mensagem", "Cancelamento solicitado", "processoId", processoId));
+        } catch (Exception e) {
+            logger.error("Erro ao cancelar processo: {}", processoId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Acompanha o processo em execução neste nó por Server-Sent Events
+     * (eventos: etapa, progresso e fim), a partir do estado em memória
+     */
+    @GetMapping(value = "/progresso/{processoId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> acompanharProgresso(@PathVariable String processoId) {
+        SseEmitter emitter = progressoFluxoService.assinar(processoId);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
     /**
      * Obtém estatísticas do processamento
      */
@@ -73,29 +147,50 @@ public class FluxoController {
     }
 
     /**
-     * Obtém todos os logs (últimos 100)
+     * Obtém o progresso da carga distribuída por nó
      */
-    @GetMapping("/logs")
-    public ResponseEntity<Map<String, Object>> obterTodosLogs(
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "100") int size) {
+    @GetMapping("/distribuicao/{processoId}")
+    public ResponseEntity<Map<String, Object>> obterProgressoDistribuicao(@PathVariable String processoId) {
         try {
-            // Implementar paginação se necessário
-            Map<String, Object> response = Map.of(
-                "message", "Use /logs/{processoId} para obter logs de um processo específico",
-                "endpoints", Map.of(
-                    "logs_por_processo", "/api/fluxo/logs/{processoId}",
-                    "status_controle", "/api/fluxo/status",
-                    "estatisticas", "/api/fluxo/estatisticas"
-                )
-            );
-            return ResponseEntity.ok(response);
+            Map<String, Object> progresso = fluxoPrincipalService.obterProgressoDistribuicao(processoId);
+            return ResponseEntity.ok(progresso);
         } catch (Exception e) {
-            logger.error("Erro ao obter logs", e);
+            logger.error("Erro ao obter progresso da distribuição do processo: {}", processoId, e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Consulta logs em NDJSON com paginação por cursor (data_inicio, _id), mais recentes primeiro.
+     * A última linha traz o proximoCursor a ser enviado em ?cursor= para a página seguinte.
+     */
+    @GetMapping(value = "/logs", produces = MEDIA_TYPE_NDJSON)
+    public ResponseEntity<StreamingResponseBody> obterTodosLogs(
+            @RequestParam(required = false) String processoId,
+            @RequestParam(required = false) String etapa,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime de,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime ate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestParam(defaultValue = "desc") String ordem) {
+        ConsultaLogsService.FiltroLogs filtro = new ConsultaLogsService.FiltroLogs(processoId, etapa, status, de, ate);
+        boolean crescente = "asc".equalsIgnoreCase(ordem);
+
+        Document consulta;
+        try {
+            consulta = consultaLogsService.montarConsulta(filtro, cursor, crescente);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Consulta de logs recusada: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody corpo = saida -> consultaLogsService.consultar(consulta, size, crescente, saida);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MEDIA_TYPE_NDJSON))
+                .body(corpo);
+    }
+
     /**
      * Obtém status atual do controle de processo
      */
@@ -142,24 +237,20 @@ public class FluxoController {
     }
 
     /**
-     * Reset do controle de processo para permitir nova execução
+     * Reset do controle de processo para permitir nova execução. Com um lease em vigor só é feito com
+     * force=true; caso contrário responde 409 com o dono e a expiração do lease
      */
     @PostMapping("/reset")
-    public ResponseEntity<Map<String, Object>> resetarControleProcesso() {
+    public ResponseEntity<Map<String, Object>> resetarControleProcesso(@RequestParam(defaultValue = "false") boolean force) {
         try {
-            logger.info("Solicitação de reset do controle de processo recebida");
+            logger.info("Solicitação de reset do controle de processo recebida (force: {})", force);
             
-            Optional<ProcessControl> controleOpt = processControlRepository.findControlDocument();
+            Document anterior = leaseProcessoService.resetar(force);
+            Optional<ProcessControl> controleOpt = anterior == null ? processControlRepository.findControlDocument() : Optional.empty();
             Map<String, Object> response = new HashMap<>();
             
-            if (controleOpt.isPresent()) {
-                ProcessControl controle = controleOpt.get();
-                ProcessControl.StatusProcesso statusAnterior = controle.getStatus();
-                
-                controle.setStatus(ProcessControl.StatusProcesso.PRONTO);
-                controle.setDataAtualizacao(LocalDateTime.now());
-                controle.setErroDetalhes(null);
-                processControlRepository.save(controle);
+            if (anterior != null) {
+                String statusAnterior = anterior.getString("status");
                 
                 response.put("sucesso", true);
                 response.put("statusAnterior", statusAnterior);
@@ -167,6 +258,14 @@ public class FluxoController {
                 response.put("mensagem", "Controle de processo resetado com sucesso");
                 
                 logger.info("Controle de processo resetado. Status anterior: {}, Status atual: PRONTO", statusAnterior);
+            } else if (controleOpt.isPresent()) {
+                ProcessControl controle = controleOpt.get();
+                response.put("sucesso", false);
+                response.put("leaseDono", controle.getLeaseDono());
+                response.put("leaseExpiraEm", controle.getLeaseExpiraEm());
+                response.put("mensagem", "Lease de execução em vigor; use force=true para resetar mesmo assim");
+                logger.warn("Reset recusado: lease em vigor do nó {} até {}", controle.getLeaseDono(), controle.getLeaseExpiraEm());
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
             } else {
                 response.put("sucesso", true);
                 response.put("mensagem", "Nenhum controle de processo encontrado");
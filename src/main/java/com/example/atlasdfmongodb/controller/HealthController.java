@@ -1,11 +1,9 @@
 package com.example.atlasdfmongodb.controller;
 
+import com.example.atlasdfmongodb.service.SondaSaudeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -23,89 +21,28 @@ import java.util.Map;
 public class HealthController {
 
     private static final Logger logger = LoggerFactory.getLogger(HealthController.class);
-@Autowired
-    @Qualifier("primaryMongoTemplate")
-    private MongoTemplate primaryMongoTemplate;
 
     @Autowired
-    @Qualifier("flatMongoTemplate")
-    private MongoTemplate flatMongoTemplate;
-
-    @Autowired
-    @Qualifier("controlMongoTemplate")
-    private MongoTemplate controlMongoTemplate;
-
-    @Value("${app.mongodb.collection.health-check}")
-    private String collectionHealthCheck;
+    private SondaSaudeService sondaSaudeService;
 
     /**
-     * Health check básico da aplicação
+     * Health check básico da aplicação (estado em cache da sonda de saúde)
      */
     @GetMapping
     public ResponseEntity<Map<String, Object>> healthCheck() {
         Map<String, Object> health = new HashMap<>();
-        boolean isHealthy = true;
-        
-        try {
-            // Verificar conexão com banco principal
-            long countPrincipal = primaryMongoTemplate.estimatedCount("flat");
-            health.put("mongodb_principal", Map.of(
-                "status", "UP",
-                "database", "bradesco",
-                "collection", "flat",
-                "estimated_count", countPrincipal
-            ));
-            
-        } catch (Exception e) {
-            logger.error("Erro ao verificar saúde do banco principal", e);
-            health.put("mongodb_principal", Map.of(
-                "status", "DOWN",
-                "error", e.getMessage()
-            ));
-            isHealthy = false;
-        }
-        
-        try {
-            // Verificar conexão com banco flat
-            long countFlat = flatMongoTemplate.estimatedCount("temp");
-            health.put("mongodb_flat", Map.of(
-                "status", "UP",
-                "database", "bradesco_flat",
-                "collection", "temp",
-                "estimated_count", countFlat
-            ));
-            
-        } catch (Exception e) {
-            logger.error("Erro ao verificar saúde do banco flat", e);
-            health.put("mongodb_flat", Map.of(
-                "status", "DOWN",
-                "error", e.getMessage()
-            ));
-            isHealthy = false;
-        }
-        
-        try {
-            // Verificar conexão com banco de controle
-            long countControl = controlMongoTemplate.estimatedCount("process_control");
-            health.put("mongodb_control", Map.of(
-                "status", "UP",
-                "database", "felipescabral",
-                "collection", "process_control",
-                "estimated_count", countControl
-            ));
-            
-        } catch (Exception e) {
-            logger.error("Erro ao verificar saúde do banco de controle", e);
-            health.put("mongodb_control", Map.of(
-                "status", "DOWN",
-                "error", e.getMessage()
-            ));
-            isHealthy = false;
-        }
-        
+
+        health.put("mongodb_principal", estadoCluster(SondaSaudeService.PRINCIPAL, "bradesco"));
+        health.put("mongodb_flat", estadoCluster(SondaSaudeService.FLAT, "bradesco_flat"));
+        health.put("mongodb_control", estadoCluster(SondaSaudeService.CONTROLE, "felipescabral"));
+
+        boolean isHealthy = sondaSaudeService.isSaudavel(SondaSaudeService.PRINCIPAL)
+                && sondaSaudeService.isSaudavel(SondaSaudeService.FLAT)
+                && sondaSaudeService.isSaudavel(SondaSaudeService.CONTROLE);
+
         health.put("overall_status", isHealthy ? "UP" : "DOWN");
         health.put("timestamp", LocalDateTime.now());
-        
+
         return ResponseEntity.ok(health);
     }
 
@@ -120,20 +57,20 @@ public class HealthController {
         
         try {
             // Check MongoDB Principal
-            try {
-                primaryMongoTemplate.getCollection(collectionHealthCheck).estimatedDocumentCount();
-                checks.put("mongodb_primary", createHealthStatus("UP", "Conexão com MongoDB principal OK"));
-            } catch (Exception e) {
-                checks.put("mongodb_primary", createHealthStatus("DOWN", "Erro na conexão com MongoDB principal: " + e.getMessage()));
+            Map<String, Object> principal = sondaSaudeService.obterEstado(SondaSaudeService.PRINCIPAL);
+            if ("UP".equals(principal.get("status"))) {
+                checks.put("mongodb_primary", createHealthStatus("UP", "Conexão com MongoDB principal OK", principal));
+            } else {
+                checks.put("mongodb_primary", createHealthStatus("DOWN", "Erro na conexão com MongoDB principal: " + principal.get("error"), principal));
                 allHealthy = false;
             }
 
             // Check MongoDB Flat
-            try {
-                flatMongoTemplate.getCollection(collectionHealthCheck).estimatedDocumentCount();
-                checks.put("mongodb_flat", createHealthStatus("UP", "Conexão com MongoDB flat OK"));
-            } catch (Exception e) {
-                checks.put("mongodb_flat", createHealthStatus("DOWN", "Erro na conexão com MongoDB flat: " + e.getMessage()));
+            Map<String, Object> flat = sondaSaudeService.obterEstado(SondaSaudeService.FLAT);
+            if ("UP".equals(flat.get("status"))) {
+                checks.put("mongodb_flat", createHealthStatus("UP", "Conexão com MongoDB flat OK", flat));
+            } else {
+                checks.put("mongodb_flat", createHealthStatus("DOWN", "Erro na conexão com MongoDB flat: " + flat.get("error"), flat));
                 allHealthy = false;
             }
 
@@ -193,31 +130,30 @@ public class HealthController {
     public ResponseEntity<Map<String, Object>> mongoHealthCheck() {
         Map<String, Object> response = new HashMap<>();
         
-        try {
-            // Test primary MongoDB
-            long primaryCount = primaryMongoTemplate.getCollection(collectionHealthCheck).estimatedDocumentCount();
-            
-            // Test flat MongoDB
-            long flatCount = flatMongoTemplate.getCollection(collectionHealthCheck).estimatedDocumentCount();
-            
-            response.put("status", "UP");
-            response.put("timestamp", LocalDateTime.now());
-            response.put("primary_mongodb", "Connected");
-            response.put("flat_mongodb", "Connected");
-            response.put("primary_collections_checked", primaryCount >= 0);
-            response.put("flat_collections_checked", flatCount >= 0);
-            
-            return ResponseEntity.ok(response);
-            
-        } catch (Exception e) {
-            logger.error("Erro durante MongoDB health check", e);
-            
-            response.put("status", "DOWN");
-            response.put("timestamp", LocalDateTime.now());
-            response.put("error", e.getMessage());
-            
+        boolean primaryUp = sondaSaudeService.isSaudavel(SondaSaudeService.PRINCIPAL);
+        boolean flatUp = sondaSaudeService.isSaudavel(SondaSaudeService.FLAT);
+
+        response.put("status", primaryUp && flatUp ? "UP" : "DOWN");
+        response.put("timestamp", LocalDateTime.now());
+        response.put("primary_mongodb", primaryUp ? "Connected" : "Disconnected");
+        response.put("flat_mongodb", flatUp ? "Connected" : "Disconnected");
+        response.put("primary", sondaSaudeService.obterEstado(SondaSaudeService.PRINCIPAL));
+        response.put("flat", sondaSaudeService.obterEstado(SondaSaudeService.FLAT));
+
+        if (!primaryUp || !flatUp) {
+            logger.warn("MongoDB health check com cluster indisponível - principal: {}, flat: {}", primaryUp, flatUp);
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Estado em cache de um cluster no formato do health check básico
+     */
+    private Map<String, Object> estadoCluster(String cluster, String database) {
+        Map<String, Object> estado = new HashMap<>(sondaSaudeService.obterEstado(cluster));
+        estado.put("database", database);
+        return estado;
     }
 
     /**
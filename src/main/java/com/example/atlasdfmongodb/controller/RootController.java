@@ -38,7 +38,12 @@ public class RootController {
         endpoints.put("GET /fluxo/processos", "Lista todos os processos");
         endpoints.put("GET /fluxo/processos/ativos", "Lista processos ativos");
         endpoints.put("GET /fluxo/processos/{id}", "Detalhes de um processo específico");
-        endpoints.put("POST /fluxo/executar", "Executa o fluxo principal manualmente");
+        endpoints.put("POST /fluxo/executar", "Submete a execução manual do fluxo (202; ?retomar=true retoma o último processo com erro)");
+        endpoints.put("GET /fluxo/jobs/{processoId}", "Estado do job submetido");
+        endpoints.put("POST /fluxo/jobs/{processoId}/cancelar", "Cancela o processo em execução");
+        endpoints.put("GET /fluxo/logs", "Consulta de logs em NDJSON (filtros processoId, etapa, status, de, ate; paginação por cursor)");
+        endpoints.put("GET /fluxo/progresso/{processoId}", "Progresso em tempo real do processo (Server-Sent Events)");
+        endpoints.put("GET /fluxo/distribuicao/{processoId}", "Progresso da carga distribuída por nó");
         
         response.put("endpoints", endpoints);
         
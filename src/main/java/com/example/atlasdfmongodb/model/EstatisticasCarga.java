@@ -0,0 +1,51 @@
+package com.example.atlasdfmongodb.model;
+
+/**
+ * Contagens de documentos válidos e inválidos de uma carga
+ */
+public class EstatisticasCarga {
+
+    private final long total;
+    private final long validos;
+    private final long invalidos;
+
+    public EstatisticasCarga(long total, long validos, long invalidos) {
+        this.total = total;
+        this.validos = validos;
+        this.invalidos = invalidos;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getValidos() {
+        return validos;
+    }
+
+    public long getInvalidos() {
+        return invalidos;
+    }
+
+    // Percentuais arredondados em duas casas decimais
+    public double getPercentualValidos() {
+        return percentual(validos);
+    }
+
+    public double getPercentualInvalidos() {
+        return percentual(invalidos);
+    }
+
+    private double percentual(long quantidade) {
+        return total > 0 ? Math.round((double) quantidade / total * 100.0 * 100.0) / 100.0 : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "EstatisticasCarga{" +
+                "total=" + total +
+                ", validos=" + validos +
+                ", invalidos=" + invalidos +
+                '}';
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.atlasdfmongodb.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Execução do fluxo submetida de forma assíncrona, acompanhada em memória pelo nó que a executa
+ */
+public class JobFluxo {
+
+    private final String processoId;
+    private final boolean retomada;
+    private volatile EstadoJob estado;
+    private volatile ProcessControl.StatusProcesso statusProcesso;
+    private final LocalDateTime dataSubmissao;
+    private volatile LocalDateTime dataInicio;
+    private volatile LocalDateTime dataFim;
+
+    public enum EstadoJob {
+        EM_FILA,
+        EM_EXECUCAO,
+        CONCLUIDO,
+        ERRO,
+        CANCELADO
+    }
+
+    public JobFluxo(String processoId, boolean retomada) {
+        this.processoId = processoId;
+        this.retomada = retomada;
+        this.estado = EstadoJob.EM_FILA;
+        this.dataSubmissao = LocalDateTime.now();
+    }
+
+    /**
+     * Marca o início da execução na thread do executor
+     */
+    public void iniciar() {
+        this.estado = EstadoJob.EM_EXECUCAO;
+        this.dataInicio = LocalDateTime.now();
+    }
+
+    /**
+     * Registra o status final gravado no process_control
+     */
+    public void finalizar(ProcessControl.StatusProcesso statusProcesso) {
+        this.statusProcesso = statusProcesso;
+        this.estado = switch (statusProcesso) {
+            case ERRO -> EstadoJob.ERRO;
+            case CANCELADO -> EstadoJob.CANCELADO;
+            default -> EstadoJob.CONCLUIDO;
+        };
+        this.dataFim = LocalDateTime.now();
+    }
+
+    public boolean isFinalizado() {
+        return dataFim != null;
+    }
+
+    // Getters
+    public String getProcessoId() {
+        return processoId;
+    }
+
+    public boolean isRetomada() {
+        return retomada;
+    }
+
+    public EstadoJob getEstado() {
+        return estado;
+    }
+
+    public ProcessControl.StatusProcesso getStatusProcesso() {
+        return statusProcesso;
+    }
+
+    public LocalDateTime getDataSubmissao() {
+        return dataSubmissao;
+    }
+
+    public LocalDateTime getDataInicio() {
+        return dataInicio;
+    }
+
+    public LocalDateTime getDataFim() {
+        return dataFim;
+    }
+
+    @Override
+    public String toString() {
+        return "JobFluxo{" +
+                "processoId='" + processoId + '\'' +
+                ", estado=" + estado +
+                ", statusProcesso=" + statusProcesso +
+                ", dataSubmissao=" + dataSubmissao +
+                '}';
+    }
+}
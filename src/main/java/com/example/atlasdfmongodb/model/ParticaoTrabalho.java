@@ -0,0 +1,250 @@
+package com.example.atlasdfmongodb.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * Item de trabalho da carga distribuída: uma faixa de _id do flat
+ * que pode ser reivindicada e processada por qualquer réplica
+ */
+@Document(collection = "load_work_items")
+public class ParticaoTrabalho {
+
+    @Id
+    private String id;
+
+    @Field("processo_id")
+    private String processoId;
+
+    @Field("indice")
+    private Integer indice;
+
+    @Field("total")
+    private Integer total;
+
+    @Field("collection_origem")
+    private String collectionOrigem;
+
+    @Field("collection_destino")
+    private String collectionDestino;
+
+    @Field("id_minimo")
+    private Object idMinimo;
+
+    @Field("id_maximo")
+    private Object idMaximo;
+
+    @Field("maximo_inclusivo")
+    private Boolean maximoInclusivo;
+
+    @Field("documentos")
+    private Long documentos;
+
+    @Field("estagio_projecao")
+    private org.bson.Document estagioProjecao;
+
+    @Field("status")
+    private StatusParticao status;
+
+    @Field("dono")
+    private String dono;
+
+    @Field("lease_expira_em")
+    private LocalDateTime leaseExpiraEm;
+
+    @Field("tentativas")
+    private Integer tentativas;
+
+    @Field("data_inicio")
+    private LocalDateTime dataInicio;
+
+    @Field("data_fim")
+    private LocalDateTime dataFim;
+
+    @Field("erro_detalhes")
+    private String erroDetalhes;
+
+    public enum StatusParticao {
+        PENDENTE,
+        EM_PROCESSAMENTO,
+        CONCLUIDO,
+        ERRO,
+        CANCELADO
+    }
+
+    // Construtores
+    public ParticaoTrabalho() {
+    }
+
+    public ParticaoTrabalho(String processoId, int indice, int total, String collectionOrigem, String collectionDestino) {
+        this.id = processoId + "_" + indice;
+        this.processoId = processoId;
+        this.indice = indice;
+        this.total = total;
+        this.collectionOrigem = collectionOrigem;
+        this.collectionDestino = collectionDestino;
+        this.status = StatusParticao.PENDENTE;
+        this.tentativas = 0;
+    }
+
+    // Getters e Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProcessoId() {
+        return processoId;
+    }
+
+    public void setProcessoId(String processoId) {
+        this.processoId = processoId;
+    }
+
+    public Integer getIndice() {
+        return indice;
+    }
+
+    public void setIndice(Integer indice) {
+        this.indice = indice;
+    }
+
+    public Integer getTotal() {
+        return total;
+    }
+
+    public void setTotal(Integer total) {
+        this.total = total;
+    }
+
+    public String getCollectionOrigem() {
+        return collectionOrigem;
+    }
+
+    public void setCollectionOrigem(String collectionOrigem) {
+        this.collectionOrigem = collectionOrigem;
+    }
+
+    public String getCollectionDestino() {
+        return collectionDestino;
+    }
+
+    public void setCollectionDestino(String collectionDestino) {
+        this.collectionDestino = collectionDestino;
+    }
+
+    public Object getIdMinimo() {
+        return idMinimo;
+    }
+
+    public void setIdMinimo(Object idMinimo) {
+        this.idMinimo = idMinimo;
+    }
+
+    public Object getIdMaximo() {
+        return idMaximo;
+    }
+
+    public void setIdMaximo(Object idMaximo) {
+        this.idMaximo = idMaximo;
+    }
+
+    public Boolean getMaximoInclusivo() {
+        return maximoInclusivo;
+    }
+
+    public void setMaximoInclusivo(Boolean maximoInclusivo) {
+        this.maximoInclusivo = maximoInclusivo;
+    }
+
+    public Long getDocumentos() {
+        return documentos;
+    }
+
+    public void setDocumentos(Long documentos) {
+        this.documentos = documentos;
+    }
+
+    public org.bson.Document getEstagioProjecao() {
+        return estagioProjecao;
+    }
+
+    public void setEstagioProjecao(org.bson.Document estagioProjecao) {
+        this.estagioProjecao = estagioProjecao;
+    }
+
+    public StatusParticao getStatus() {
+        return status;
+    }
+
+    public void setStatus(StatusParticao status) {
+        this.status = status;
+    }
+
+    public String getDono() {
+        return dono;
+    }
+
+    public void setDono(String dono) {
+        this.dono = dono;
+    }
+
+    public LocalDateTime getLeaseExpiraEm() {
+        return leaseExpiraEm;
+    }
+
+    public void setLeaseExpiraEm(LocalDateTime leaseExpiraEm) {
+        this.leaseExpiraEm = leaseExpiraEm;
+    }
+
+    public Integer getTentativas() {
+        return tentativas;
+    }
+
+    public void setTentativas(Integer tentativas) {
+        this.tentativas = tentativas;
+    }
+
+    public LocalDateTime getDataInicio() {
+        return dataInicio;
+    }
+
+    public void setDataInicio(LocalDateTime dataInicio) {
+        this.dataInicio = dataInicio;
+    }
+
+    public LocalDateTime getDataFim() {
+        return dataFim;
+    }
+
+    public void setDataFim(LocalDateTime dataFim) {
+        this.dataFim = dataFim;
+    }
+
+    public String getErroDetalhes() {
+        return erroDetalhes;
+    }
+
+    public void setErroDetalhes(String erroDetalhes) {
+        this.erroDetalhes = erroDetalhes;
+    }
+
+    @Override
+    public String toString() {
+        return "ParticaoTrabalho{" +
+                "id='" + id + '\'' +
+                ", processoId='" + processoId + '\'' +
+                ", indice=" + indice +
+                ", total=" + total +
+                ", status=" + status +
+                ", dono='" + dono + '\'' +
+                ", tentativas=" + tentativas +
+                '}';
+    }
+}
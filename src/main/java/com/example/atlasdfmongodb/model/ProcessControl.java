@@ -24,11 +24,18 @@ public class ProcessControl {
     @Field("erro_detalhes")
     private String erroDetalhes;
 
+    @Field("lease_dono")
+    private String leaseDono; // nó que detém o lease de execução
+
+    @Field("lease_expira_em")
+    private LocalDateTime leaseExpiraEm;
+
     public enum StatusProcesso {
         PRONTO,
         EM_EXECUCAO,
         PROCESSADO,
-        ERRO
+        ERRO,
+        CANCELADO
     }
 
     // Construtores
@@ -94,6 +101,22 @@ public class ProcessControl {
         this.erroDetalhes = erroDetalhes;
     }
 
+    public String getLeaseDono() {
+        return leaseDono;
+    }
+
+    public void setLeaseDono(String leaseDono) {
+        this.leaseDono = leaseDono;
+    }
+
+    public LocalDateTime getLeaseExpiraEm() {
+        return leaseExpiraEm;
+    }
+
+    public void setLeaseExpiraEm(LocalDateTime leaseExpiraEm) {
+        this.leaseExpiraEm = leaseExpiraEm;
+    }
+
     // Métodos utilitários
     public void atualizarStatus(StatusProcesso novoStatus) {
         this.status = novoStatus;
@@ -119,6 +142,8 @@ public class ProcessControl {
                 ", dataAtualizacao=" + dataAtualizacao +
                 ", processoId='" + processoId + '\'' +
                 ", erroDetalhes='" + erroDetalhes + '\'' +
+                ", leaseDono='" + leaseDono + '\'' +
+                ", leaseExpiraEm=" + leaseExpiraEm +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package com.example.atlasdfmongodb.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @Document(collection = "process_logs")
 public class ProcessLog {
@@ -34,6 +37,20 @@ public class ProcessLog {
     @Field("status")
     private String status;
 
+    @Field("documentos_processados")
+    private Long documentosProcessados;
+
+    // Índices construídos por um único createIndexes (etapa CONSTRUCAO_INDICES)
+    @Field("indices")
+    private List<String> indices;
+
+    @Field("quantidade_indices")
+    private Integer quantidadeIndices;
+
+    // Status já gravado ou enfileirado para gravação, base dos contadores de logs
+    @Transient
+    private String statusGravado;
+
     // Construtores
     public ProcessLog() {
     }
@@ -123,6 +140,40 @@ public class ProcessLog {
         this.status = status;
     }
 
+    public Long getDocumentosProcessados() {
+        return documentosProcessados;
+    }
+
+    public void setDocumentosProcessados(Long documentosProcessados) {
+        this.documentosProcessados = documentosProcessados;
+    }
+
+    public List<String> getIndices() {
+        return indices;
+    }
+
+    public void setIndices(List<String> indices) {
+        this.indices = indices;
+        this.quantidadeIndices = indices != null ? indices.size() : null;
+    }
+
+    public Integer getQuantidadeIndices() {
+        return quantidadeIndices;
+    }
+
+    public void setQuantidadeIndices(Integer quantidadeIndices) {
+        this.quantidadeIndices = quantidadeIndices;
+    }
+
+    @JsonIgnore
+    public String getStatusGravado() {
+        return statusGravado;
+    }
+
+    public void setStatusGravado(String statusGravado) {
+        this.statusGravado = statusGravado;
+    }
+
     // Métodos utilitários
     public void finalizarEtapa() {
         this.dataFim = LocalDateTime.now();
@@ -154,6 +205,8 @@ public class ProcessLog {
                 ", tempoTotalSegundos=" + tempoTotalSegundos +
                 ", etapa='" + etapa + '\'' +
                 ", status='" + status + '\'' +
+                ", documentosProcessados=" + documentosProcessados +
+                ", indices=" + indices +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessLog;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo de armazenamento da collection de logs:
+ * padrao (collection comum, limpeza noturna com delete), ttl (índice TTL em data_inicio) ou
+ * timeseries (collection time-series com data_inicio como tempo e processo_id como metadado).
+ * Nos modos ttl e timeseries a retenção é aplicada pelo próprio servidor.
+ */
+@Service
+public class ArmazenamentoLogsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArmazenamentoLogsService.class);
+
+    public static final String MODO_PADRAO = "padrao";
+    public static final String MODO_TTL = "ttl";
+    public static final String MODO_TIMESERIES = "timeseries";
+
+    private static final String INDICE_TTL = "ttl_data_inicio";
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Value("${app.logs.storage.mode:padrao}")
+    private String modoConfigurado;
+
+    @Value("${app.logs.retention-days:30}")
+    private long diasRetencao;
+
+    private volatile String modo = MODO_PADRAO;
+
+    /**
+     * Cria ou ajusta a collection de logs antes que qualquer índice ou gravação a crie como collection comum
+     */
+    @PostConstruct
+    public void preparar() {
+        try {
+            String collectionLogs = controlMongoTemplate.getCollectionName(ProcessLog.class);
+            MongoDatabase database = controlMongoTemplate.getDb();
+            Document existente = database.listCollections().filter(new Document("name", collectionLogs)).first();
+            long retencaoSegundos = TimeUnit.DAYS.toSeconds(diasRetencao);
+
+            if (MODO_TIMESERIES.equalsIgnoreCase(modoConfigurado)) {
+                if (existente == null) {
+                    database.createCollection(collectionLogs, new CreateCollectionOptions()
+                            .timeSeriesOptions(new TimeSeriesOptions("data_inicio")
+                                    .metaField("processo_id")
+                                    .granularity(TimeSeriesGranularity.SECONDS))
+                            .expireAfter(retencaoSegundos, TimeUnit.SECONDS));
+                    logger.info("Collection time-series {} criada com retenção de {} dias", collectionLogs, diasRetencao);
+                    modo = MODO_TIMESERIES;
+                    return;
+                }
+                if ("timeseries".equals(existente.getString("type"))) {
+                    Document opcoes = existente.get("options", new Document());
+                    if (!Long.valueOf(retencaoSegundos).equals(numero(opcoes.get("expireAfterSeconds")))) {
+                        database.runCommand(new Document("collMod", collectionLogs)
+                                .append("expireAfterSeconds", retencaoSegundos));
+                        logger.info("Retenção da collection time-series {} ajustada para {} dias", collectionLogs, diasRetencao);
+                    }
+                    modo = MODO_TIMESERIES;
+                    return;
+                }
+                // Uma collection comum não pode ser convertida: a retenção passa a ser feita por TTL
+                logger.warn("Collection {} já existe como collection comum; usando índice TTL em vez de time-series",
+                        collectionLogs);
+                prepararTtl(collectionLogs, retencaoSegundos);
+                return;
+            }
+
+            if (MODO_TTL.equalsIgnoreCase(modoConfigurado)) {
+                prepararTtl(collectionLogs, retencaoSegundos);
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao preparar armazenamento da collection de logs; mantendo modo padrão", e);
+            modo = MODO_PADRAO;
+        }
+    }
+
+    private void prepararTtl(String collectionLogs, long retencaoSegundos) {
+        Document indice = null;
+        for (Document existente : controlMongoTemplate.getCollection(collectionLogs).listIndexes()) {
+            if (INDICE_TTL.equals(existente.getString("name"))) {
+                indice = existente;
+            }
+        }
+
+        if (indice == null) {
+            controlMongoTemplate.getCollection(collectionLogs).createIndex(new Document("data_inicio", 1),
+                    new IndexOptions().name(INDICE_TTL).expireAfter(retencaoSegundos, TimeUnit.SECONDS));
+            logger.info("Índice TTL criado na collection {} com retenção de {} dias", collectionLogs, diasRetencao);
+        } else if (!Long.valueOf(retencaoSegundos).equals(numero(indice.get("expireAfterSeconds")))) {
+            controlMongoTemplate.getDb().runCommand(new Document("collMod", collectionLogs)
+                    .append("index", new Document("name", INDICE_TTL).append("expireAfterSeconds", retencaoSegundos)));
+            logger.info("Retenção do índice TTL da collection {} ajustada para {} dias", collectionLogs, diasRetencao);
+        }
+        modo = MODO_TTL;
+    }
+
+    private Long numero(Object valor) {
+        return valor instanceof Number numero ? numero.longValue() : null;
+    }
+
+    /**
+     * Modo efetivo após a preparação da collection
+     */
+    public String getModo() {
+        return modo;
+    }
+
+    /**
+     * Logs em collection time-series: apenas inserções, sem atualização por _id
+     */
+    public boolean isSerieTemporal() {
+        return MODO_TIMESERIES.equals(modo);
+    }
+
+    /**
+     * Retenção aplicada pelo servidor (TTL ou expireAfterSeconds da time-series)
+     */
+    public boolean isRetencaoNoServidor() {
+        return !MODO_PADRAO.equals(modo);
+    }
+
+    public long getDiasRetencao() {
+        return diasRetencao;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.atlasdfmongodb.service;
+
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Carga incremental: processa apenas os registros do flat com _id acima do
+ * watermark persistido no banco de controle e faz upsert via $merge na
+ * collection do dia. O watermark só avança quando o processo termina com sucesso.
+ * O watermark é mantido por origem e data de referência: datas do backlog carregadas em paralelo a partir
+ * da mesma origem não sobrescrevem o limite pendente uma da outra.
+ */
+@Service
+public class CargaIncrementalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CargaIncrementalService.class);
+
+    @Autowired
+    @Qualifier("primaryMongoTemplate")
+    private MongoTemplate primaryMongoTemplate;
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private PlanejadorIndicesService planejadorIndicesService;
+
+    @Value("${mongodb.flat.database}")
+    private String flatDatabase;
+
+    @Value("${mongodb.atlas.project-id}")
+    private String atlasProjectId;
+
+    @Value("${mongodb.atlas.cluster-name}")
+    private String atlasClusterName;
+
+    @Value("${mongodb.control.collection.watermarks:load_watermarks}")
+    private String collectionWatermarks;
+
+    // Origem e limite superior do delta carregado por cada processo, aguardando confirmação
+    private final Map<String, Document> limitesPendentes = new ConcurrentHashMap<>();
+
+    /**
+     * Carrega o delta da origem acima do seu watermark na collection de destino.
+     * O estágio de projeção deve preservar o _id de origem para que o $merge seja idempotente.
+     */
+    public void executarCargaIncremental(String processoId, String collectionOrigem, String collectionDestino,
+                                         Document estagioProjecao, String dataReferencia) {
+        Document chave = chaveWatermark(collectionOrigem, dataReferencia);
+        Object watermark = obterWatermark(chave);
+        Criteria criterioDelta = watermark != null ? Criteria.where("_id").gt(watermark) : new Criteria();
+
+        // Fixa o limite superior antes da carga para que registros novos fiquem para a próxima execução
+        Document ultimo = primaryMongoTemplate.getCollection(collectionOrigem)
+                .find(criterioDelta.getCriteriaObject())
+                .projection(Projections.include("_id"))
+                .sort(Sorts.descending("_id"))
+                .limit(1)
+                .first();
+
+        if (ultimo == null) {
+            logger.info("Nenhum registro novo após o watermark {} - Processo ID: {}", watermark, processoId);
+            return;
+        }
+
+        Object novoLimite = ultimo.get("_id");
+        Document filtroId = new Document("$lte", novoLimite);
+        if (watermark != null) {
+            filtroId.append("$gt", watermark);
+        }
+
+        // A collection do dia é criada na primeira carga; clusterizada ela precisa existir antes do $merge
+        planejadorIndicesService.prepararCollectionDestino(processoId, collectionDestino, false);
+
+        List<Document> pipeline = Arrays.asList(
+            new Document("$match", new Document("_id", filtroId)),
+            estagioProjecao,
+            new Document("$merge", new Document()
+                .append("into", new Document("atlas", new Document()
+                    .append("projectId", atlasProjectId)
+                    .append("clusterName", atlasClusterName)
+                    .append("db", flatDatabase)
+                    .append("coll", collectionDestino)))
+                .append("on", "_id")
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert"))
+        );
+
+        primaryMongoTemplate.getCollection(collectionOrigem).aggregate(pipeline).comment(processoId).toCollection();
+
+        // Registro do limite pendente no controle, para auditoria até a confirmação
+        controlMongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(chave)),
+                new Update()
+                    .set("pendente_id", novoLimite)
+                    .set("pendente_processo_id", processoId)
+                    .set("data_atualizacao", LocalDateTime.now()),
+                collectionWatermarks);
+        limitesPendentes.put(processoId, new Document("chave", chave).append("limite", novoLimite));
+
+        logger.info("Carga incremental concluída - Processo ID: {} | Watermark: {} -> {}",
+                processoId, watermark, novoLimite);
+    }
+
+    /**
+     * Avança o watermark para o limite carregado pelo processo, em uma única
+     * atualização condicionada ao processo que registrou o limite pendente
+     */
+    public void confirmarWatermark(String processoId) {
+        Document pendente = limitesPendentes.remove(processoId);
+        Document chave;
+        Object novoLimite;
+        if (pendente != null) {
+            chave = pendente.get("chave", Document.class);
+            novoLimite = pendente.get("limite");
+        } else {
+            // Processo retomado: a carga foi feita em uma execução anterior e o limite só existe no controle
+            Document controle = controlMongoTemplate.getCollection(collectionWatermarks)
+                    .find(new Document("pendente_processo_id", processoId))
+                    .first();
+            if (controle == null) {
+                return;
+            }
+            chave = controle.get("_id", Document.class);
+            novoLimite = controle.get("pendente_id");
+        }
+
+        Query query = new Query(Criteria.where("_id").is(chave).and("pendente_processo_id").is(processoId));
+        Update update = new Update()
+                .set("ultimo_id", novoLimite)
+                .set("processo_id", processoId)
+                .set("data_atualizacao", LocalDateTime.now())
+                .unset("pendente_id")
+                .unset("pendente_processo_id");
+
+        if (controlMongoTemplate.updateFirst(query, update, collectionWatermarks).getModifiedCount() == 0) {
+            logger.warn("Watermark não avançado: limite pendente pertence a outro processo - Processo ID: {}", processoId);
+            return;
+        }
+        logger.info("Watermark da origem {} na data {} avançado para {} - Processo ID: {}",
+                chave.getString("origem"), chave.getString("data"), novoLimite, processoId);
+    }
+
+    /**
+     * Descarta o limite pendente de um processo que não terminou com sucesso
+     */
+    public void descartarWatermark(String processoId) {
+        limitesPendentes.remove(processoId);
+    }
+
+    // _id composto: a ordem dos campos faz parte da igualdade e é sempre origem, data
+    private Document chaveWatermark(String collectionOrigem, String dataReferencia) {
+        return new Document("origem", collectionOrigem).append("data", dataReferencia);
+    }
+
+    private Object obterWatermark(Document chave) {
+        Document controle = controlMongoTemplate.getCollection(collectionWatermarks)
+                .find(new Document("_id", chave))
+                .first();
+        return controle != null ? controle.get("ultimo_id") : null;
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.EstatisticasCarga;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Motor de carga alternativo ao $out: lê o flat em lotes do cursor,
+ * fatia o registro DATA em Java e grava com insertMany não ordenado.
+ * Cartões repetidos entre os registros válidos são detectados durante a leitura por um conjunto de
+ * impressões digitais fora do heap e tratados conforme app.duplicates.policy, em vez de falharem
+ * apenas na criação do índice único ao final da carga. Como a impressão digital pode colidir, nenhum registro
+ * é descartado sem a conferência da identidade exata do cartão: as repetições aguardam em uma collection
+ * auxiliar (no heap fica só a identidade) e são resolvidas ao final com o índice de identidade já construído.
+ * Com a quarentena separada os registros inválidos
+ * vão, com o motivo, para a collection de quarentena na mesma passada. Com despacho por tipo de registro
+ * cada registro é fatiado pelo layout do seu prefixo; cabeçalhos e rodapés ficam fora dos contadores e
+ * são registrados para a conferência das quantidades.
+ */
+@Service
+public class CargaParserService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CargaParserService.class);
+
+    /**
+     * Tratamento de cartão repetido: desligada (sem detecção; o índice único falha ao final),
+     * primeiro (mantém a primeira ocorrência), ultimo (a última ocorrência substitui a anterior)
+     * ou quarentena (repetições gravadas na collection de quarentena)
+     */
+    public enum PoliticaDuplicados { DESLIGADA, PRIMEIRO, ULTIMO, QUARENTENA }
+
+    public static final String CHECKPOINT_DUPLICADOS = "DUPLICADOS";
+
+    public static final String MOTIVO_CARTAO_DUPLICADO = "CARTAO_DUPLICADO";
+
+    // Repetições gravadas na collection auxiliar e resolvidas por lote de identidades ao final
+    private static final int TAMANHO_LOTE_REPETIDOS = 1000;
+
+    // Collection auxiliar das repetições (_id = identidade exata), removida ao final da carga
+    private static final String SUFIXO_REPETIDOS = "_repetidos";
+
+    @Autowired
+    @Qualifier("primaryMongoTemplate")
+    private MongoTemplate primaryMongoTemplate;
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    private EstatisticasCargaService estatisticasCargaService;
+
+    @Autowired
+    private JobFluxoService jobFluxoService;
+
+    @Autowired
+    private ProgressoFluxoService progressoFluxoService;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private PlanejadorIndicesService planejadorIndicesService;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private ConferenciaControleService conferenciaControleService;
+
+    @Value("${app.batch.size:1000}")
+    private int tamanhoLoteCursor;
+
+    @Value("${app.bulk.insert.size:50000}")
+    private int tamanhoLoteInsercao;
+
+    @Value("${app.duplicates.policy:desligada}")
+    private String politicaConfigurada;
+
+    @Value("${app.duplicates.expected-cards:10000000}")
+    private long cartoesEsperados;
+
+    /**
+     * Carrega o flat na collection de destino e retorna o total de documentos gravados
+     */
+    public long executarCarga(String processoId, String collectionOrigem, String collectionDestino, String collectionQuarentena) {
+        // Mesma semântica do $out: a collection de destino é recriada
+        planejadorIndicesService.prepararCollectionDestino(processoId, collectionDestino, true);
+        MongoCollection<Document> destino = flatMongoTemplate.getCollection(collectionDestino);
+        InsertManyOptions opcoesInsercao = new InsertManyOptions().ordered(false);
+
+        PoliticaDuplicados politica = PoliticaDuplicados.valueOf(politicaConfigurada.toUpperCase());
+        ConjuntoImpressoesDigitais impressoes = politica != PoliticaDuplicados.DESLIGADA
+                ? new ConjuntoImpressoesDigitais(cartoesEsperados) : null;
+        boolean separarInvalidos = esquemaSaidaService.isQuarentenaSeparada();
+        MongoCollection<Document> quarentena = null;
+        if (politica == PoliticaDuplicados.QUARENTENA || separarInvalidos) {
+            flatMongoTemplate.dropCollection(collectionQuarentena);
+            quarentena = flatMongoTemplate.getCollection(collectionQuarentena);
+        }
+        // Política ultimo: a última ocorrência de cada identidade; primeiro e quarentena: a primeira
+        // repetição, que pode ser colisão de impressão digital
+        MongoCollection<Document> repetidos = null;
+        if (impressoes != null) {
+            flatMongoTemplate.dropCollection(collectionDestino + SUFIXO_REPETIDOS);
+            repetidos = flatMongoTemplate.getCollection(collectionDestino + SUFIXO_REPETIDOS);
+        }
+        List<WriteModel<Document>> loteRepetidos = new ArrayList<>();
+        // Identidades já na collection auxiliar (primeiro e quarentena): apenas a chave fica no heap
+        Set<String> suspeitos = new HashSet<>();
+        // Cabeçalhos e rodapés: poucos por arquivo, gravados ao final fora dos lotes
+        List<Document> registrosControle = new ArrayList<>();
+
+        // Equivalente ao $$NOW do pipeline: um único instante para toda a carga
+        Date hInclReg = new Date();
+        List<Document> lote = new ArrayList<>(tamanhoLoteInsercao);
+        List<Document> loteQuarentena = new ArrayList<>();
+        long totalDocumentos = 0L;
+        long totalValidos = 0L;
+        long totalDuplicados = 0L;
+        long totalQuarentena = 0L;
+
+        try (MongoCursor<Document> cursor = primaryMongoTemplate.getCollection(collectionOrigem)
+                .find()
+                .projection(Projections.fields(Projections.include("DATA"), Projections.excludeId()))
+                .batchSize(tamanhoLoteCursor)
+                .comment(processoId)
+                .iterator()) {
+
+            while (cursor.hasNext()) {
+                String data = cursor.next().getString("DATA");
+                LayoutRegistro layout = esquemaSaidaService.layoutDoRegistro(data);
+                String motivo = esquemaSaidaService.motivoInvalidade(layout, data);
+                if (motivo != null && separarInvalidos) {
+                    loteQuarentena.add(documentoQuarentena(motivo, data, hInclReg));
+                    totalQuarentena++;
+                    if (loteQuarentena.size() >= tamanhoLoteInsercao) {
+                        gravarQuarentena(quarentena, loteQuarentena);
+                    }
+                    continue;
+                }
+                Document documento = esquemaSaidaService.converter(layout, data, hInclReg, motivo);
+                if (motivo == null && layout.isControle()) {
+                    registrosControle.add(documento);
+                    continue;
+                }
+                if (motivo == null) {
+                    if (impressoes != null && !impressoes.adicionar(esquemaSaidaService.impressaoDigital(layout, data))) {
+                        String identidade = esquemaSaidaService.identidade(layout, data);
+                        Document repetido = new Document("_id", identidade).append("documento", documento).append("original", data);
+                        if (politica == PoliticaDuplicados.ULTIMO) {
+                            // Bulk ordenado: a ocorrência mais recente substitui a anterior
+                            totalDuplicados++;
+                            loteRepetidos.add(new ReplaceOneModel<>(new Document("_id", identidade), repetido,
+                                    new ReplaceOptions().upsert(true)));
+                        } else if (suspeitos.add(identidade)) {
+                            loteRepetidos.add(new InsertOneModel<>(repetido));
+                        } else {
+                            // A partir da segunda repetição a identidade exata já está entre os suspeitos
+                            totalDuplicados++;
+                            if (politica == PoliticaDuplicados.QUARENTENA) {
+                                loteQuarentena.add(documentoQuarentena(MOTIVO_CARTAO_DUPLICADO, data, hInclReg));
+                            }
+                        }
+                        if (loteRepetidos.size() >= TAMANHO_LOTE_REPETIDOS) {
+                            gravarRepetidos(repetidos, loteRepetidos);
+                        }
+                        continue;
+                    }
+                    totalValidos++;
+                }
+                lote.add(documento);
+
+                if (lote.size() >= tamanhoLoteInsercao) {
+                    jobFluxoService.verificarCancelamento(processoId);
+                    gravarQuarentena(quarentena, loteQuarentena);
+                    destino.insertMany(lote, opcoesInsercao);
+                    totalDocumentos += lote.size();
+                    progressoFluxoService.adicionarDocumentosProcessados(processoId, lote.size());
+                    lote.clear();
+                    logger.debug("Lote gravado - Processo ID: {} | Documentos até agora: {}", processoId, totalDocumentos);
+                }
+            }
+
+            if (!lote.isEmpty()) {
+                destino.insertMany(lote, opcoesInsercao);
+                totalDocumentos += lote.size();
+                progressoFluxoService.adicionarDocumentosProcessados(processoId, lote.size());
+            }
+            gravarQuarentena(quarentena, loteQuarentena);
+            gravarRepetidos(repetidos, loteRepetidos);
+            gravarControle(processoId, destino, registrosControle, separarInvalidos);
+        } finally {
+            if (impressoes != null) {
+                logger.debug("Impressões digitais - Processo ID: {} | Cartões: {} | Memória fora do heap: {} bytes",
+                        processoId, impressoes.tamanho(), impressoes.bytesAlocados());
+                impressoes.liberar();
+            }
+        }
+
+        long identidadesRepetidas = repetidos != null ? repetidos.countDocuments() : 0L;
+        long semOcorrenciaAnterior = 0L;
+        long colisoes = 0L;
+        if (identidadesRepetidas > 0) {
+            // As consultas por identidade exata usam o índice único (ou o _id da clusterizada), nunca uma varredura
+            if (!esquemaSaidaService.isClusterizada()) {
+                planejadorIndicesService.construirIndicesAntecipados(processoId, collectionDestino);
+            }
+            // Sem ocorrência anterior a impressão digital colidiu: o registro é um cartão distinto
+            if (politica == PoliticaDuplicados.ULTIMO) {
+                semOcorrenciaAnterior = substituirOcorrencias(destino, repetidos);
+                colisoes = semOcorrenciaAnterior;
+                totalDuplicados -= semOcorrenciaAnterior;
+            } else {
+                long confirmados = verificarSuspeitos(destino, repetidos,
+                        politica == PoliticaDuplicados.QUARENTENA ? quarentena : null, hInclReg);
+                colisoes = identidadesRepetidas - confirmados;
+                totalDuplicados += confirmados;
+            }
+            totalDocumentos += colisoes;
+            totalValidos += colisoes;
+            progressoFluxoService.adicionarDocumentosProcessados(processoId, colisoes);
+        }
+        if (repetidos != null) {
+            repetidos.drop();
+        }
+
+        if (politica != PoliticaDuplicados.DESLIGADA) {
+            // Persistido com o processo para o resumo da load_data, inclusive após uma retomada
+            checkpointService.registrar(processoId, CHECKPOINT_DUPLICADOS, new Document()
+                    .append("politica", politica.name().toLowerCase())
+                    .append("quantidade", totalDuplicados)
+                    .append("cartoes_substituidos", politica == PoliticaDuplicados.ULTIMO
+                            ? identidadesRepetidas - semOcorrenciaAnterior : 0L));
+            logger.info("Cartões repetidos - Processo ID: {} | Política: {} | Ocorrências: {} | Colisões de impressão digital: {}",
+                    processoId, politica, totalDuplicados, colisoes);
+        }
+
+        // Contadores apurados durante a carga dispensam a consulta de estatísticas da Etapa 3;
+        // inválidos em quarentena entram no total e nos inválidos
+        estatisticasCargaService.registrar(processoId, new EstatisticasCarga(totalDocumentos + totalQuarentena,
+                totalValidos, totalDocumentos - totalValidos + totalQuarentena));
+
+        logger.info("Carga via parser concluída - Processo ID: {} | Collection: {} | Documentos: {} | Inválidos em quarentena: {}",
+                processoId, collectionDestino, totalDocumentos, totalQuarentena);
+        return totalDocumentos;
+    }
+
+    /**
+     * Registra os cabeçalhos e rodapés para a conferência e os grava na collection de destino, exceto com a
+     * quarentena separada, em que ela só tem detalhes válidos
+     */
+    private void gravarControle(String processoId, MongoCollection<Document> destino, List<Document> registrosControle,
+                                boolean separarInvalidos) {
+        if (conferenciaControleService.isAtiva()) {
+            conferenciaControleService.registrar(processoId, registrosControle);
+        }
+        if (!separarInvalidos && !registrosControle.isEmpty()) {
+            destino.insertMany(registrosControle, new InsertManyOptions().ordered(false));
+        }
+        logger.debug("Registros de controle - Processo ID: {} | Quantidade: {}", processoId, registrosControle.size());
+    }
+
+    private Document documentoQuarentena(String motivo, String data, Date hInclReg) {
+        return new Document("motivo", motivo).append("original", data).append("hInclReg", hInclReg);
+    }
+
+    private void gravarQuarentena(MongoCollection<Document> quarentena, List<Document> loteQuarentena) {
+        if (quarentena != null && !loteQuarentena.isEmpty()) {
+            quarentena.insertMany(loteQuarentena, new InsertManyOptions().ordered(false));
+            loteQuarentena.clear();
+        }
+    }
+
+    // Bulk ordenado para que, na política ultimo, a substituição respeite a ordem de leitura
+    private void gravarRepetidos(MongoCollection<Document> repetidos, List<WriteModel<Document>> loteRepetidos) {
+        if (repetidos != null && !loteRepetidos.isEmpty()) {
+            repetidos.bulkWrite(loteRepetidos, new BulkWriteOptions().ordered(true));
+            loteRepetidos.clear();
+        }
+    }
+
+    /**
+     * Política ultimo: remove a primeira ocorrência já gravada e insere a última, em lotes de identidades
+     * lidos da collection auxiliar. Uma colisão de impressão digital não perde o registro: sem ocorrência
+     * anterior, o delete não remove nada. Retorna quantos documentos foram inseridos sem ocorrência anterior removida.
+     */
+    private long substituirOcorrencias(MongoCollection<Document> destino, MongoCollection<Document> repetidos) {
+        long inseridos = 0L;
+        long removidos = 0L;
+        try (MongoCursor<Document> cursor = repetidos.find().batchSize(TAMANHO_LOTE_REPETIDOS).iterator()) {
+            List<Document> lote = new ArrayList<>(TAMANHO_LOTE_REPETIDOS);
+            while (cursor.hasNext()) {
+                lote.add(cursor.next().get("documento", Document.class));
+                if (lote.size() >= TAMANHO_LOTE_REPETIDOS || !cursor.hasNext()) {
+                    List<Document> filtros = new ArrayList<>(lote.size());
+                    for (Document documento : lote) {
+                        filtros.add(esquemaSaidaService.filtroIdentidade(documento));
+                    }
+                    removidos += destino.deleteMany(new Document("$or", filtros)).getDeletedCount();
+                    destino.insertMany(lote, new InsertManyOptions().ordered(false));
+                    inseridos += lote.size();
+                    lote.clear();
+                }
+            }
+        }
+        return inseridos - removidos;
+    }
+
+    /**
+     * Políticas primeiro e quarentena: confere a primeira repetição de cada identidade, lida da collection
+     * auxiliar, com os registros já gravados, em lotes de identidades. Repetição confirmada é descartada (ou vai
+     * para a quarentena informada); sem registro com a mesma identidade exata a impressão digital colidiu e o
+     * documento é inserido. Retorna quantas repetições foram confirmadas.
+     */
+    private long verificarSuspeitos(MongoCollection<Document> destino, MongoCollection<Document> repetidos,
+                                    MongoCollection<Document> quarentena, Date hInclReg) {
+        long confirmados = 0L;
+        try (MongoCursor<Document> cursor = repetidos.find().batchSize(TAMANHO_LOTE_REPETIDOS).iterator()) {
+            List<Document> lote = new ArrayList<>(TAMANHO_LOTE_REPETIDOS);
+            while (cursor.hasNext()) {
+                lote.add(cursor.next());
+                if (lote.size() < TAMANHO_LOTE_REPETIDOS && cursor.hasNext()) {
+                    continue;
+                }
+                List<Document> filtros = new ArrayList<>(lote.size());
+                for (Document suspeito : lote) {
+                    filtros.add(esquemaSaidaService.filtroIdentidade(suspeito.get("documento", Document.class)));
+                }
+                Set<Document> gravados = new HashSet<>();
+                for (Document gravado : destino.find(new Document("$or", filtros))) {
+                    gravados.add(esquemaSaidaService.filtroIdentidade(gravado));
+                }
+
+                List<Document> distintos = new ArrayList<>();
+                List<Document> loteQuarentena = new ArrayList<>();
+                for (int i = 0; i < lote.size(); i++) {
+                    Document suspeito = lote.get(i);
+                    if (!gravados.contains(filtros.get(i))) {
+                        distintos.add(suspeito.get("documento", Document.class));
+                        continue;
+                    }
+                    confirmados++;
+                    if (quarentena != null) {
+                        loteQuarentena.add(documentoQuarentena(MOTIVO_CARTAO_DUPLICADO, suspeito.getString("original"), hInclReg));
+                    }
+                }
+                if (!distintos.isEmpty()) {
+                    destino.insertMany(distintos, new InsertManyOptions().ordered(false));
+                }
+                gravarQuarentena(quarentena, loteQuarentena);
+                lote.clear();
+            }
+        }
+        return confirmados;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessLog;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Carga particionada da collection flat: divide a origem em faixas de _id
+ * e executa uma agregação por faixa em paralelo, com pool limitado.
+ * Na origem via Data Federation o $bucketAuto é uma varredura com ordenação antes de qualquer carga e o
+ * $match de faixa de _id não elimina arquivos: cada partição relê a origem. O cálculo das faixas é medido
+ * no ProcessLog CALCULO_PARTICOES e o custo das releituras aparece nos logs CARGA_PARTICAO.
+ */
+@Service
+public class CargaParticionadaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CargaParticionadaService.class);
+
+    @Autowired
+    @Qualifier("primaryMongoTemplate")
+    private MongoTemplate primaryMongoTemplate;
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    private GravacaoLogsService gravacaoLogsService;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private PlanejadorIndicesService planejadorIndicesService;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private JobFluxoService jobFluxoService;
+
+    @Autowired
+    private ProgressoFluxoService progressoFluxoService;
+
+    @Value("${mongodb.flat.database}")
+    private String flatDatabase;
+
+    @Value("${mongodb.atlas.project-id}")
+    private String atlasProjectId;
+
+    @Value("${mongodb.atlas.cluster-name}")
+    private String atlasClusterName;
+
+    @Value("${app.load.partitions:4}")
+    private int numeroParticoes;
+
+    @Value("${app.load.partition.parallelism:4}")
+    private int paralelismo;
+
+    private static final String CHECKPOINT_PLANO = "PARTICOES";
+    private static final String CHECKPOINT_PARTICAO = "PARTICAO_";
+
+    /**
+     * Executa a carga particionada do flat para a collection de destino,
+     * aplicando o estágio de projeção informado em cada partição.
+     * Em um processo retomado reaproveita as faixas gravadas e pula as partições já concluídas.
+     */
+    public long executarCargaParticionada(String processoId, String collectionOrigem, String collectionDestino,
+                                          Document estagioProjecao) {
+        Document plano = checkpointService.obter(processoId, CHECKPOINT_PLANO);
+        List<Document> particoes;
+        if (plano != null) {
+            particoes = plano.getList("particoes", Document.class);
+            logger.info("Retomando carga particionada - Processo ID: {} | Partições: {}", processoId, particoes.size());
+        } else {
+            particoes = medirCalculoParticoes(processoId, collectionOrigem);
+            // $merge acrescenta na collection de destino, então ela precisa começar vazia
+            planejadorIndicesService.prepararCollectionDestino(processoId, collectionDestino, true);
+            checkpointService.registrar(processoId, CHECKPOINT_PLANO, new Document("particoes", particoes));
+        }
+        logger.info("Carga particionada - Processo ID: {} | Partições: {} | Paralelismo: {}",
+                processoId, particoes.size(), paralelismo);
+        progressoFluxoService.adicionarDocumentosEsperados(processoId,
+                particoes.stream().mapToLong(particao -> ((Number) particao.get("count")).longValue()).sum());
+
+        if (particoes.isEmpty()) {
+            return 0L;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(paralelismo, particoes.size())));
+        List<Future<Long>> resultados = new ArrayList<>();
+
+        try {
+            long totalDocumentos = 0L;
+            for (int i = 0; i < particoes.size(); i++) {
+                final Document particao = particoes.get(i);
+                final Document faixa = particao.get("_id", Document.class);
+                final int indice = i;
+                final boolean ultima = i == particoes.size() - 1;
+                final long documentos = ((Number) particao.get("count")).longValue();
+                final String chave = CHECKPOINT_PARTICAO + i;
+
+                if (checkpointService.isConcluido(processoId, chave)) {
+                    logger.info("Partição {}/{} já concluída, ignorando - Processo ID: {}", i + 1, particoes.size(), processoId);
+                    totalDocumentos += documentos;
+                    progressoFluxoService.adicionarDocumentosProcessados(processoId, documentos);
+                    continue;
+                }
+                resultados.add(executor.submit(() -> {
+                    jobFluxoService.verificarCancelamento(processoId);
+                    long carregados = carregarParticao(processoId, collectionOrigem, collectionDestino, estagioProjecao,
+                            faixa.get("min"), faixa.get("max"), ultima, documentos, indice, particoes.size());
+                    checkpointService.registrar(processoId, chave, null);
+                    progressoFluxoService.adicionarDocumentosProcessados(processoId, carregados);
+                    return carregados;
+                }));
+            }
+
+            for (Future<Long> resultado : resultados) {
+                totalDocumentos += resultado.get();
+            }
+            return totalDocumentos;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Carga particionada interrompida", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Erro na carga particionada: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            resultados.forEach(resultado -> resultado.cancel(true));
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calcula as faixas registrando a duração: na origem federada é uma leitura completa antes da carga
+     */
+    private List<Document> medirCalculoParticoes(String processoId, String collectionOrigem) {
+        ProcessLog log = new ProcessLog(processoId, "Calculando faixas de _id da collection: " + collectionOrigem, "CALCULO_PARTICOES");
+        gravacaoLogsService.registrar(log);
+        try {
+            List<Document> particoes = calcularParticoes(collectionOrigem);
+            log.setMensagem(String.format("%d faixas de _id calculadas com $bucketAuto na collection %s (cada faixa relê a origem federada)",
+                    particoes.size(), collectionOrigem));
+            log.finalizarEtapa();
+            gravacaoLogsService.registrar(log);
+            return particoes;
+        } catch (Exception e) {
+            log.finalizarEtapaComErro(e.getMessage());
+            gravacaoLogsService.registrar(log);
+            throw e;
+        }
+    }
+
+    /**
+     * Calcula as faixas de _id com $bucketAuto, que já devolve a contagem de cada faixa
+     * no formato {_id: {min, max}, count}
+     */
+    public List<Document> calcularParticoes(String collectionOrigem) {
+        List<Document> pipeline = Arrays.asList(
+            new Document("$project", new Document("_id", 1)),
+            new Document("$bucketAuto", new Document()
+                .append("groupBy", "$_id")
+                .append("buckets", Math.max(1, numeroParticoes)))
+        );
+        return primaryMongoTemplate.getCollection(collectionOrigem).aggregate(pipeline).into(new ArrayList<>());
+    }
+
+    /**
+     * Executa a agregação de uma partição e registra duração e volume no ProcessLog. O volume é contado na
+     * faixa de _id gravada no destino; na collection clusterizada, cujo _id é a identidade do cartão, fica a
+     * contagem do $bucketAuto, registrada apenas na mensagem. O estágio de projeção deve preservar o _id de origem: com whenMatched replace, reprocessar a
+     * partição após um $merge parcial substitui os documentos já gravados em vez de duplicá-los.
+     */
+    public long carregarParticao(String processoId, String collectionOrigem, String collectionDestino,
+                                 Document estagioProjecao,
+                                 Object idMinimo, Object idMaximo, boolean maximoInclusivo, long documentos,
+                                 int indice, int total) {
+        ProcessLog log = new ProcessLog(processoId,
+                String.format("Carregando partição %d/%d para collection: %s", indice + 1, total, collectionDestino),
+                "CARGA_PARTICAO");
+        gravacaoLogsService.registrar(log);
+
+        try {
+            // O limite superior do último bucket do $bucketAuto é inclusivo
+            Document filtroId = new Document("$gte", idMinimo)
+                    .append(maximoInclusivo ? "$lte" : "$lt", idMaximo);
+
+            List<Document> pipeline = Arrays.asList(
+                new Document("$match", new Document("_id", filtroId)),
+                estagioProjecao,
+                new Document("$merge", new Document()
+                    .append("into", new Document("atlas", new Document()
+                        .append("projectId", atlasProjectId)
+                        .append("clusterName", atlasClusterName)
+                        .append("db", flatDatabase)
+                        .append("coll", collectionDestino)))
+                    .append("whenMatched", "replace")
+                    .append("whenNotMatched", "insert"))
+            );
+
+            primaryMongoTemplate.getCollection(collectionOrigem).aggregate(pipeline).comment(processoId).toCollection();
+
+            long gravados = documentos;
+            if (esquemaSaidaService.isClusterizada()) {
+                log.setMensagem(String.format("Partição %d/%d carregada (%d documentos na faixa pelo $bucketAuto)",
+                        indice + 1, total, documentos));
+            } else {
+                // Faixa pelo índice de _id do destino, sem nova leitura da origem
+                gravados = flatMongoTemplate.getCollection(collectionDestino).countDocuments(new Document("_id", filtroId));
+                log.setDocumentosProcessados(gravados);
+                log.setMensagem(String.format("Partição %d/%d carregada com %d documentos", indice + 1, total, gravados));
+            }
+            log.finalizarEtapa();
+            gravacaoLogsService.registrar(log);
+
+            logger.info("Partição {}/{} concluída - Processo ID: {} | Documentos: {} | Tempo: {}s",
+                    indice + 1, total, processoId, gravados, log.getTempoTotalSegundos());
+            return gravados;
+
+        } catch (Exception e) {
+            log.finalizarEtapaComErro(e.getMessage());
+            gravacaoLogsService.registrar(log);
+            throw new RuntimeException("Erro na carga da partição " + (indice + 1) + "/" + total, e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.atlasdfmongodb.service;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.regex.Pattern;
+
+/**
+ * Checkpoints de etapas e partições concluídas, gravados no banco de controle.
+ * Um processo retomado com o mesmo processoId pula tudo o que já tem checkpoint.
+ */
+@Service
+public class CheckpointService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointService.class);
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Value("${mongodb.control.collection.checkpoints:process_checkpoints}")
+    private String collectionCheckpoints;
+
+    /**
+     * Indica se a etapa ou partição já foi concluída pelo processo
+     */
+    public boolean isConcluido(String processoId, String chave) {
+        return controlMongoTemplate.exists(queryCheckpoint(processoId, chave), collectionCheckpoints);
+    }
+
+    /**
+     * Dados gravados junto ao checkpoint, ou null se não houver checkpoint
+     */
+    public Document obter(String processoId, String chave) {
+        Document checkpoint = controlMongoTemplate.getCollection(collectionCheckpoints)
+                .find(new Document("_id", processoId + ":" + chave))
+                .first();
+        return checkpoint != null ? checkpoint.get("dados", Document.class) : null;
+    }
+
+    /**
+     * Registra a conclusão da etapa ou partição, com dados opcionais para a retomada
+     */
+    public void registrar(String processoId, String chave, Document dados) {
+        Update update = new Update()
+                .set("processo_id", processoId)
+                .set("chave", chave)
+                .set("data_conclusao", LocalDateTime.now());
+        if (dados != null) {
+            update.set("dados", dados);
+        }
+        controlMongoTemplate.upsert(queryCheckpoint(processoId, chave), update, collectionCheckpoints);
+        logger.debug("Checkpoint {} registrado - Processo ID: {}", chave, processoId);
+    }
+
+    /**
+     * Remove os checkpoints do processo e de suas datas (processoId_yyyyMMdd) após a conclusão
+     */
+    public void remover(String processoId) {
+        controlMongoTemplate.remove(
+                new Query(Criteria.where("processo_id").regex("^" + Pattern.quote(processoId))),
+                collectionCheckpoints);
+    }
+
+    private Query queryCheckpoint(String processoId, String chave) {
+        return new Query(Criteria.where("_id").is(processoId + ":" + chave));
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.EstatisticasCarga;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conferência das quantidades declaradas nos cabeçalhos e rodapés com o número de detalhes carregados.
+ * O número de detalhes vem das estatísticas da Etapa 3 (ou dos contadores do parser), sem nova contagem;
+ * os registros de controle vêm do checkpoint gravado pelo parser ou, nos modos de pipeline, da collection
+ * temporária pelo índice de validade (são os únicos documentos sem esse campo).
+ */
+@Service
+public class ConferenciaControleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConferenciaControleService.class);
+
+    public static final String CHECKPOINT_CONTROLE = "CONTROLE";
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private LayoutRegistroService layoutRegistroService;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    /**
+     * Há conferência quando o descritor tem algum cabeçalho ou rodapé com campo de quantidade
+     */
+    public boolean isAtiva() {
+        return layoutRegistroService.getDespacho().controles.stream().anyMatch(layout -> layout.campoQuantidade >= 0);
+    }
+
+    /**
+     * Registra os registros de controle lidos pelo parser, que com a quarentena separada não vão para
+     * a collection temporária; o checkpoint mantém a conferência após uma retomada
+     */
+    public void registrar(String processoId, List<Document> registros) {
+        checkpointService.registrar(processoId, CHECKPOINT_CONTROLE, new Document("registros", registros));
+    }
+
+    /**
+     * Confere cada layout de controle com quantidade: a soma declarada nos seus registros deve ser igual
+     * ao número de detalhes (válidos, inválidos e cartões repetidos tratados na carga). Layout de controle
+     * ausente indica arquivo truncado. Retorna o resumo da conferência e lança IllegalStateException
+     * se houver divergência.
+     */
+    public Document conferir(String processoId, String nomeCollection, EstatisticasCarga estatisticas) {
+        long detalhes = estatisticas.getValidos() + estatisticas.getInvalidos();
+        Document duplicados = checkpointService.obter(processoId, CargaParserService.CHECKPOINT_DUPLICADOS);
+        if (duplicados != null) {
+            detalhes += ((Number) duplicados.get("quantidade")).longValue();
+        }
+
+        List<Document> registros = obterRegistros(processoId, nomeCollection);
+        Document resumo = new Document("detalhes", detalhes);
+        List<String> divergencias = new ArrayList<>();
+        for (LayoutRegistro layout : layoutRegistroService.getDespacho().controles) {
+            if (layout.campoQuantidade < 0) {
+                continue;
+            }
+            String campo = esquemaSaidaService.isCompacto() ? layout.compactos[layout.campoQuantidade] : layout.campos[layout.campoQuantidade];
+            long declarado = 0L;
+            int quantidadeRegistros = 0;
+            for (Document registro : registros) {
+                if (!layout.nome.equals(registro.getString(esquemaSaidaService.campoControle()))) {
+                    continue;
+                }
+                Long quantidade = quantidade(registro.get(esquemaSaidaService.campoDados(), Document.class).get(campo));
+                if (quantidade == null) {
+                    divergencias.add(layout.nome + " com quantidade inválida");
+                    continue;
+                }
+                declarado += quantidade;
+                quantidadeRegistros++;
+            }
+
+            resumo.append(layout.nome, declarado);
+            if (quantidadeRegistros == 0) {
+                divergencias.add(layout.nome + " ausente (arquivo truncado?)");
+            } else if (declarado != detalhes) {
+                divergencias.add(layout.nome + " declara " + declarado + " detalhes e foram carregados " + detalhes);
+            }
+        }
+
+        logger.info("Conferência dos registros de controle - Processo ID: {} | Collection: {} | {}",
+                processoId, nomeCollection, resumo.toJson());
+        if (!divergencias.isEmpty()) {
+            throw new IllegalStateException("Registros de controle divergentes na collection " + nomeCollection + ": "
+                    + String.join("; ", divergencias));
+        }
+        return resumo;
+    }
+
+    private List<Document> obterRegistros(String processoId, String nomeCollection) {
+        Document checkpoint = checkpointService.obter(processoId, CHECKPOINT_CONTROLE);
+        if (checkpoint != null) {
+            return checkpoint.getList("registros", Document.class);
+        }
+        // {validade: null} seleciona apenas os registros de controle e usa idx_validade
+        return flatMongoTemplate.getCollection(nomeCollection)
+                .find(new Document(esquemaSaidaService.campoValidade(), null))
+                .into(new ArrayList<>());
+    }
+
+    // Número no esquema compacto; texto de largura fixa no padrão
+    private Long quantidade(Object valor) {
+        if (valor instanceof Number numero) {
+            return numero.longValue();
+        }
+        try {
+            return valor == null ? null : Long.parseLong(valor.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
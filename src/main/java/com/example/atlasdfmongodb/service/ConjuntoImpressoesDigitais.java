@@ -0,0 +1,124 @@
+package com.example.atlasdfmongodb.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Conjunto de impressões digitais de 64 bits fora do heap (buffers diretos), com endereçamento aberto
+ * e sondagem linear. Cada posição ocupa 8 bytes e o valor 0 marca posição livre; sem objetos por
+ * elemento, dezenas de milhões de cartões não geram pressão de GC. Não é thread-safe.
+ */
+final class ConjuntoImpressoesDigitais {
+
+    // Posições por segmento: 2^24 * 8 bytes = 128 MB por buffer direto
+    private static final int BITS_SEGMENTO = 24;
+    private static final int POSICOES_SEGMENTO = 1 << BITS_SEGMENTO;
+    private static final long MASCARA_SEGMENTO = POSICOES_SEGMENTO - 1;
+
+    private static final double CARGA_MAXIMA = 0.75;
+
+    private LongBuffer[] segmentos;
+    private long mascara;
+    private long tamanho;
+    private long limite;
+
+    ConjuntoImpressoesDigitais(long capacidadeEsperada) {
+        alocar(Math.max(16L, Long.highestOneBit(Math.max(1L, (long) (capacidadeEsperada / CARGA_MAXIMA)) - 1) << 1));
+    }
+
+    /**
+     * Adiciona a impressão e retorna false se ela já estava no conjunto
+     */
+    boolean adicionar(long impressao) {
+        long valor = impressao == 0 ? 1 : impressao;
+        if (tamanho >= limite) {
+            crescer();
+        }
+        long posicao = misturar(valor) & mascara;
+        while (true) {
+            long atual = ler(posicao);
+            if (atual == 0) {
+                gravar(posicao, valor);
+                tamanho++;
+                return true;
+            }
+            if (atual == valor) {
+                return false;
+            }
+            posicao = (posicao + 1) & mascara;
+        }
+    }
+
+    long tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Memória fora do heap ocupada pelas posições, em bytes
+     */
+    long bytesAlocados() {
+        return (mascara + 1) * Long.BYTES;
+    }
+
+    /**
+     * Solta os buffers; a memória direta é devolvida quando o GC coleta os buffers
+     */
+    void liberar() {
+        segmentos = new LongBuffer[0];
+        mascara = -1;
+        tamanho = 0;
+        limite = 0;
+    }
+
+    private void alocar(long posicoes) {
+        int quantidade = (int) Math.max(1L, posicoes >>> BITS_SEGMENTO);
+        int posicoesPorSegmento = (int) Math.min(posicoes, POSICOES_SEGMENTO);
+        segmentos = new LongBuffer[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            segmentos[i] = ByteBuffer.allocateDirect(posicoesPorSegmento * Long.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+        }
+        mascara = posicoes - 1;
+        limite = (long) (posicoes * CARGA_MAXIMA);
+        tamanho = 0;
+    }
+
+    // Dobra a capacidade reinserindo as impressões existentes
+    private void crescer() {
+        LongBuffer[] anteriores = segmentos;
+        alocar((mascara + 1) << 1);
+        for (LongBuffer segmento : anteriores) {
+            for (int i = 0; i < segmento.capacity(); i++) {
+                long valor = segmento.get(i);
+                if (valor != 0) {
+                    long posicao = misturar(valor) & mascara;
+                    while (ler(posicao) != 0) {
+                        posicao = (posicao + 1) & mascara;
+                    }
+                    gravar(posicao, valor);
+                    tamanho++;
+                }
+            }
+        }
+    }
+
+    private long ler(long posicao) {
+        return segmentos[(int) (posicao >>> BITS_SEGMENTO)].get((int) (posicao & MASCARA_SEGMENTO));
+    }
+
+    private void gravar(long posicao, long valor) {
+        segmentos[(int) (posicao >>> BITS_SEGMENTO)].put((int) (posicao & MASCARA_SEGMENTO), valor);
+    }
+
+    // Finalizador do MurmurHash3: espalha os bits antes de reduzir pela máscara
+    private static long misturar(long valor) {
+        valor ^= valor >>> 33;
+        valor *= 0xff51afd7ed558ccdL;
+        valor ^= valor >>> 33;
+        valor *= 0xc4ceb53a185ec34fL;
+        valor ^= valor >>> 33;
+        return valor;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.IndexOptions;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consulta de logs com paginação por chave (data_inicio, _id): cada página continua a partir do
+ * último registro da anterior usando os índices compostos, sem skip, e é gravada em NDJSON
+ * conforme o cursor avança.
+ */
+@Service
+@DependsOn("armazenamentoLogsService") // a collection time-series precisa existir antes da criação dos índices
+public class ConsultaLogsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsultaLogsService.class);
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.logs.max-page-size:5000}")
+    private int tamanhoMaximoPagina;
+
+    /**
+     * Índices compostos terminando em (data_inicio, _id) para cada filtro de igualdade suportado
+     */
+    @PostConstruct
+    public void criarIndices() {
+        try {
+            MongoCollection<Document> logs = controlMongoTemplate.getCollection(
+                    controlMongoTemplate.getCollectionName(ProcessLog.class));
+            logs.createIndex(new Document("data_inicio", -1).append("_id", -1),
+                    new IndexOptions().name("idx_data_inicio_id"));
+            for (String campo : Arrays.asList("processo_id", "etapa", "status")) {
+                logs.createIndex(new Document(campo, 1).append("data_inicio", -1).append("_id", -1),
+                        new IndexOptions().name("idx_" + campo + "_data_inicio_id"));
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao criar índices da collection de logs", e);
+        }
+    }
+
+    /**
+     * Monta o filtro da consulta; um cursor inválido gera IllegalArgumentException antes do streaming
+     */
+    public Document montarConsulta(FiltroLogs filtro, String cursor, boolean crescente) {
+        List<Document> criterios = new ArrayList<>();
+        if (filtro.processoId() != null) {
+            criterios.add(new Document("processo_id", filtro.processoId()));
+        }
+        if (filtro.etapa() != null) {
+            criterios.add(new Document("etapa", filtro.etapa()));
+        }
+        if (filtro.status() != null) {
+            criterios.add(new Document("status", filtro.status()));
+        }
+        if (filtro.de() != null) {
+            criterios.add(new Document("data_inicio", new Document("$gte", paraDate(filtro.de()))));
+        }
+        if (filtro.ate() != null) {
+            criterios.add(new Document("data_inicio", new Document("$lte", paraDate(filtro.ate()))));
+        }
+        if (cursor != null && !cursor.isBlank()) {
+            criterios.add(criterioContinuacao(cursor, crescente));
+        }
+
+        return criterios.isEmpty() ? new Document() : new Document("$and", criterios);
+    }
+
+    /**
+     * Grava no stream uma página de logs em NDJSON, um ProcessLog por linha. A última linha traz
+     * {"proximoCursor": ...} para continuar a consulta, nulo quando não há mais registros.
+     */
+    public void consultar(Document consulta, int tamanho, boolean crescente, OutputStream saida) throws IOException {
+        int limite = Math.max(1, Math.min(tamanho, tamanhoMaximoPagina));
+        int direcao = crescente ? 1 : -1;
+        Document ordenacao = new Document("data_inicio", direcao).append("_id", direcao);
+
+        MongoCollection<Document> logs = controlMongoTemplate.getCollection(
+                controlMongoTemplate.getCollectionName(ProcessLog.class));
+
+        Document ultimo = null;
+        int quantidade = 0;
+        try (MongoCursor<Document> resultado = logs.find(consulta)
+                .sort(ordenacao)
+                .limit(limite)
+                .batchSize(Math.min(limite, 1000))
+                .iterator()) {
+            while (resultado.hasNext()) {
+                ultimo = resultado.next();
+                ProcessLog log = controlMongoTemplate.getConverter().read(ProcessLog.class, ultimo);
+                escreverLinha(saida, log);
+                quantidade++;
+            }
+        }
+
+        Map<String, Object> pagina = new HashMap<>();
+        pagina.put("quantidade", quantidade);
+        pagina.put("proximoCursor", quantidade == limite && ultimo != null ? codificarCursor(ultimo) : null);
+        escreverLinha(saida, pagina);
+    }
+
+    private void escreverLinha(OutputStream saida, Object valor) throws IOException {
+        saida.write(objectMapper.writeValueAsBytes(valor));
+        saida.write('\n');
+    }
+
+    /**
+     * Registros estritamente após (data_inicio, _id) do cursor na ordem da consulta
+     */
+    private Document criterioContinuacao(String cursor, boolean crescente) {
+        Date dataInicio;
+        Object id;
+        try {
+            String[] partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+            dataInicio = new Date(Long.parseLong(partes[0]));
+            id = "o".equals(partes[1]) ? new ObjectId(partes[2]) : partes[2];
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor inválido: " + cursor, e);
+        }
+        String operador = crescente ? "$gt" : "$lt";
+
+        return new Document("$or", Arrays.asList(
+                new Document("data_inicio", new Document(operador, dataInicio)),
+                new Document("data_inicio", dataInicio).append("_id", new Document(operador, id))));
+    }
+
+    private String codificarCursor(Document ultimo) {
+        Object id = ultimo.get("_id");
+        String tipo = id instanceof ObjectId ? "o" : "s";
+        String valor = id instanceof ObjectId objectId ? objectId.toHexString() : String.valueOf(id);
+        String cursor = ultimo.getDate("data_inicio").getTime() + ":" + tipo + ":" + valor;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Date paraDate(LocalDateTime data) {
+        return Date.from(data.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Filtros opcionais da consulta de logs
+     */
+    public record FiltroLogs(String processoId, String etapa, String status, LocalDateTime de, LocalDateTime ate) {
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessLog;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.ReplaceOptions;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contadores materializados dos logs (total, por status e por etapa) em um único documento,
+ * mantidos com $inc a cada gravação ou remoção de ProcessLog. A consulta das estatísticas
+ * passa a ser uma leitura pontual em vez de contagens sobre a collection de logs.
+ */
+@Service
+public class ContadoresLogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContadoresLogService.class);
+
+    private static final String ID_CONTADORES = "contadores_logs";
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Value("${mongodb.control.collection.log-stats:process_log_stats}")
+    private String collectionContadores;
+
+    /**
+     * Na primeira subida os contadores são calculados uma única vez a partir da collection de logs
+     */
+    @PostConstruct
+    public void inicializar() {
+        try {
+            if (obterDocumento() == null) {
+                Document contadores = calcular();
+                try {
+                    controlMongoTemplate.getCollection(collectionContadores).insertOne(contadores);
+                    logger.info("Contadores de logs inicializados - Total: {}", contadores.get("total"));
+                } catch (MongoWriteException | DuplicateKeyException e) {
+                    // Outra réplica inicializou primeiro
+                    logger.debug("Contadores de logs já inicializados por outro nó");
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao inicializar contadores de logs", e);
+        }
+    }
+
+    /**
+     * Contabiliza um lote de logs gravados com um único $inc
+     */
+    public void registrarGravacoes(List<Gravacao> gravacoes) {
+        Map<String, Long> incrementos = new HashMap<>();
+        for (Gravacao gravacao : gravacoes) {
+            if (gravacao.statusAnterior() == null) {
+                incrementos.merge("total", 1L, Long::sum);
+                incrementos.merge("por_etapa." + chave(gravacao.etapa()), 1L, Long::sum);
+                incrementos.merge("por_status." + chave(gravacao.status()), 1L, Long::sum);
+            } else if (!gravacao.statusAnterior().equals(gravacao.status())) {
+                incrementos.merge("por_status." + chave(gravacao.statusAnterior()), -1L, Long::sum);
+                incrementos.merge("por_status." + chave(gravacao.status()), 1L, Long::sum);
+            }
+        }
+        incrementos.values().removeIf(valor -> valor == 0L);
+        if (incrementos.isEmpty()) {
+            return;
+        }
+
+        Update update = new Update().set("data_atualizacao", LocalDateTime.now());
+        incrementos.forEach(update::inc);
+        controlMongoTemplate.upsert(queryContadores(), update, collectionContadores);
+    }
+
+    /**
+     * Remove os logs anteriores à data limite descontando-os dos contadores
+     */
+    public long removerLogsAnteriores(LocalDateTime dataLimite) {
+        String collectionLogs = controlMongoTemplate.getCollectionName(ProcessLog.class);
+        Date limite = Date.from(dataLimite.atZone(ZoneId.systemDefault()).toInstant());
+        Document filtro = new Document("data_inicio", new Document("$lt", limite));
+
+        List<Document> grupos = controlMongoTemplate.getCollection(collectionLogs).aggregate(Arrays.asList(
+                new Document("$match", filtro),
+                new Document("$group", new Document()
+                        .append("_id", new Document("status", "$status").append("etapa", "$etapa"))
+                        .append("quantidade", new Document("$sum", 1)))
+        )).into(new ArrayList<>());
+
+        long removidos = controlMongoTemplate.getCollection(collectionLogs).deleteMany(filtro).getDeletedCount();
+        if (removidos == 0) {
+            return 0L;
+        }
+
+        Update update = new Update().set("data_atualizacao", LocalDateTime.now()).inc("total", -removidos);
+        Map<String, Long> porStatus = new HashMap<>();
+        Map<String, Long> porEtapa = new HashMap<>();
+        for (Document grupo : grupos) {
+            Document chaveGrupo = grupo.get("_id", Document.class);
+            long quantidade = ((Number) grupo.get("quantidade")).longValue();
+            porStatus.merge(chave(chaveGrupo.getString("status")), quantidade, Long::sum);
+            porEtapa.merge(chave(chaveGrupo.getString("etapa")), quantidade, Long::sum);
+        }
+        porStatus.forEach((status, quantidade) -> update.inc("por_status." + status, -quantidade));
+        porEtapa.forEach((etapa, quantidade) -> update.inc("por_etapa." + etapa, -quantidade));
+
+        controlMongoTemplate.upsert(queryContadores(), update, collectionContadores);
+        return removidos;
+    }
+
+    /**
+     * Contadores atuais: total, por_status e por_etapa
+     */
+    public Document obterContadores() {
+        Document contadores = obterDocumento();
+        return contadores != null ? contadores : new Document("total", 0L)
+                .append("por_status", new Document())
+                .append("por_etapa", new Document());
+    }
+
+    /**
+     * Recalcula os contadores a partir da collection de logs, substituindo os atuais
+     * (usado quando a retenção é feita pelo servidor, que remove logs sem passar pelos contadores)
+     */
+    public void recalcular() {
+        Document contadores = calcular();
+        controlMongoTemplate.getCollection(collectionContadores).replaceOne(
+                new Document("_id", ID_CONTADORES), contadores, new ReplaceOptions().upsert(true));
+        logger.info("Contadores de logs recalculados - Total: {}", contadores.get("total"));
+    }
+
+    private Document calcular() {
+        String collectionLogs = controlMongoTemplate.getCollectionName(ProcessLog.class);
+        Document resultado = controlMongoTemplate.getCollection(collectionLogs).aggregate(Arrays.asList(
+                new Document("$facet", new Document()
+                        .append("total", Arrays.asList(new Document("$count", "quantidade")))
+                        .append("por_status", Arrays.asList(new Document("$group", new Document("_id", "$status")
+                                .append("quantidade", new Document("$sum", 1)))))
+                        .append("por_etapa", Arrays.asList(new Document("$group", new Document("_id", "$etapa")
+                                .append("quantidade", new Document("$sum", 1))))))
+        )).first();
+
+        Document porStatus = new Document();
+        Document porEtapa = new Document();
+        long total = 0L;
+        if (resultado != null) {
+            for (Document grupo : resultado.getList("por_status", Document.class)) {
+                porStatus.append(chave(grupo.getString("_id")), ((Number) grupo.get("quantidade")).longValue());
+            }
+            for (Document grupo : resultado.getList("por_etapa", Document.class)) {
+                porEtapa.append(chave(grupo.getString("_id")), ((Number) grupo.get("quantidade")).longValue());
+            }
+            List<Document> contagem = resultado.getList("total", Document.class);
+            total = contagem.isEmpty() ? 0L : ((Number) contagem.get(0).get("quantidade")).longValue();
+        }
+
+        return new Document("_id", ID_CONTADORES)
+                .append("total", total)
+                .append("por_status", porStatus)
+                .append("por_etapa", porEtapa)
+                .append("data_atualizacao", LocalDateTime.now());
+    }
+
+    /**
+     * Gravação de um log: statusAnterior nulo indica inserção
+     */
+    public record Gravacao(String etapa, String statusAnterior, String status) {
+    }
+
+    private Document obterDocumento() {
+        return controlMongoTemplate.getCollection(collectionContadores)
+                .find(new Document("_id", ID_CONTADORES))
+                .first();
+    }
+
+    private Query queryContadores() {
+        return new Query(Criteria.where("_id").is(ID_CONTADORES));
+    }
+
+    // Nomes de campo não podem conter '.' nem começar com '$'
+    private String chave(String valor) {
+        return valor == null ? "SEM_VALOR" : valor.replace('.', '_').replace('$', '_');
+    }
+}
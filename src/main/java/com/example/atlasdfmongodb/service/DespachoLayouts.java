@@ -0,0 +1,156 @@
+package com.example.atlasdfmongodb.service;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seleção do layout de cada registro pelos primeiros caracteres de DATA (tipo do registro).
+ * Prefixos ASCII de até 2 caracteres usam uma tabela indexada pelos próprios caracteres, sem
+ * alocação por registro; prefixos maiores usam um mapa. Descritor sem "layouts" é um layout único
+ * aplicado a todos os registros, sem despacho.
+ */
+final class DespachoLayouts {
+
+    private static final int ASCII = 128;
+    private static final int TAMANHO_MAXIMO_TABELA = 2;
+
+    // Quantidade de caracteres do tipo do registro (0 sem despacho)
+    final int tamanhoTipo;
+
+    final List<LayoutRegistro> layouts;
+    final List<LayoutRegistro> detalhes;
+    final List<LayoutRegistro> controles;
+
+    private final LayoutRegistro[] tabela;
+    private final Map<String, LayoutRegistro> mapa;
+
+    private DespachoLayouts(int tamanhoTipo, List<LayoutRegistro> layouts) {
+        this.tamanhoTipo = tamanhoTipo;
+        this.layouts = Collections.unmodifiableList(layouts);
+        List<LayoutRegistro> listaDetalhes = new ArrayList<>();
+        List<LayoutRegistro> listaControles = new ArrayList<>();
+        for (LayoutRegistro layout : layouts) {
+            (layout.isControle() ? listaControles : listaDetalhes).add(layout);
+        }
+        this.detalhes = Collections.unmodifiableList(listaDetalhes);
+        this.controles = Collections.unmodifiableList(listaControles);
+
+        boolean prefixosAscii = layouts.stream().allMatch(layout -> layout.tipo == null || layout.tipo.chars().allMatch(c -> c < ASCII));
+        if (tamanhoTipo > 0 && tamanhoTipo <= TAMANHO_MAXIMO_TABELA && prefixosAscii) {
+            tabela = new LayoutRegistro[tamanhoTipo == 1 ? ASCII : ASCII * ASCII];
+            for (LayoutRegistro layout : layouts) {
+                tabela[indiceTabela(layout.tipo)] = layout;
+            }
+            mapa = null;
+        } else {
+            tabela = null;
+            mapa = new HashMap<>();
+            for (LayoutRegistro layout : layouts) {
+                mapa.put(layout.tipo, layout);
+            }
+        }
+    }
+
+    /**
+     * Compila o descritor de layout único ou o descritor com tamanhoTipo e a lista de layouts por tipo.
+     * Os detalhes precisam ter a mesma identidade de cartão e a mesma chave do índice único.
+     */
+    static DespachoLayouts compilar(Document descritor) {
+        if (!descritor.containsKey("layouts")) {
+            return new DespachoLayouts(0, List.of(LayoutRegistro.compilar(descritor)));
+        }
+
+        int tamanhoTipo = descritor.getInteger("tamanhoTipo");
+        List<LayoutRegistro> layouts = new ArrayList<>();
+        Map<String, String> tipos = new HashMap<>();
+        for (Document definicao : descritor.getList("layouts", Document.class)) {
+            LayoutRegistro layout = LayoutRegistro.compilar(definicao);
+            if (layout.tipo == null || layout.tipo.length() != tamanhoTipo) {
+                throw new IllegalArgumentException("Layout " + layout.nome + " com tipo diferente de " + tamanhoTipo + " caracteres");
+            }
+            String repetido = tipos.put(layout.tipo, layout.nome);
+            if (repetido != null) {
+                throw new IllegalArgumentException("Tipo " + layout.tipo + " repetido nos layouts " + repetido + " e " + layout.nome);
+            }
+            layouts.add(layout);
+        }
+
+        DespachoLayouts despacho = new DespachoLayouts(tamanhoTipo, layouts);
+        if (despacho.detalhes.isEmpty()) {
+            throw new IllegalArgumentException("Descritor sem layout de detalhe");
+        }
+        LayoutRegistro principal = despacho.principal();
+        for (LayoutRegistro detalhe : despacho.detalhes) {
+            if (!Arrays.equals(nomes(detalhe, detalhe.identidade), nomes(principal, principal.identidade))
+                    || !Arrays.equals(nomes(detalhe, detalhe.chaveIndice), nomes(principal, principal.chaveIndice))) {
+                throw new IllegalArgumentException("Layout " + detalhe.nome + " com identidade diferente de " + principal.nome);
+            }
+        }
+        return despacho;
+    }
+
+    boolean isDespacho() {
+        return tamanhoTipo > 0;
+    }
+
+    /**
+     * Primeiro detalhe: referência para a identidade do cartão e os índices
+     */
+    LayoutRegistro principal() {
+        return detalhes.get(0);
+    }
+
+    /**
+     * Layout do registro, ou null quando o tipo não corresponde a nenhum layout
+     */
+    LayoutRegistro selecionar(String data) {
+        if (tamanhoTipo == 0) {
+            return layouts.get(0);
+        }
+        if (data == null || data.length() < tamanhoTipo) {
+            return null;
+        }
+        if (tabela == null) {
+            return mapa.get(data.substring(0, tamanhoTipo));
+        }
+        int indice = 0;
+        for (int i = 0; i < tamanhoTipo; i++) {
+            char c = data.charAt(i);
+            if (c >= ASCII) {
+                return null;
+            }
+            indice = indice * ASCII + c;
+        }
+        return tabela[indice];
+    }
+
+    /**
+     * Layout pelo nome, usado para interpretar documentos já gravados
+     */
+    LayoutRegistro porNome(String nome) {
+        for (LayoutRegistro layout : layouts) {
+            if (layout.nome.equals(nome)) {
+                return layout;
+            }
+        }
+        return null;
+    }
+
+    private static int indiceTabela(String tipo) {
+        int indice = 0;
+        for (int i = 0; i < tipo.length(); i++) {
+            indice = indice * ASCII + tipo.charAt(i);
+        }
+        return indice;
+    }
+
+    private static String[] nomes(LayoutRegistro layout, int[] campos) {
+        return Arrays.stream(campos).mapToObj(campo -> layout.campos[campo] + "/" + layout.compactos[campo]).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ParticaoTrabalho;
+import com.example.atlasdfmongodb.model.ParticaoTrabalho.StatusParticao;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Carga distribuída entre réplicas: o coordenador (nó que detém o lease do processo)
+ * divide a carga em partições gravadas como itens de trabalho no banco de controle;
+ * todas as réplicas reivindicam, processam e concluem partições até o fim da carga.
+ * Partições cujo dono parou de renovar o lease são reivindicadas por outro nó. Como no lease do processo,
+ * a expiração dos itens é calculada e comparada com o relógio do servidor ($$NOW), não com o de cada réplica.
+ */
+@Service
+public class DistribuicaoCargaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistribuicaoCargaService.class);
+
+    private static final String MODO_CARGA_DISTRIBUIDO = "distribuido";
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Autowired
+    private CargaParticionadaService cargaParticionadaService;
+
+    @Autowired
+    private LeaseProcessoService leaseProcessoService;
+
+    @Autowired
+    private JobFluxoService jobFluxoService;
+
+    @Autowired
+    private ProgressoFluxoService progressoFluxoService;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private PlanejadorIndicesService planejadorIndicesService;
+
+    @Value("${app.load.mode:out}")
+    private String modoCarga;
+
+    @Value("${app.work.lease-seconds:120}")
+    private long duracaoLeaseSegundos;
+
+    @Value("${app.work.max-attempts:3}")
+    private int maximoTentativas;
+
+    @Value("${app.work.wait-seconds:5}")
+    private long esperaCoordenadorSegundos;
+
+    // Itens em processamento neste nó, renovados pelo heartbeat
+    private final Set<String> itensEmProcessamento = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Coordena a carga distribuída do processo: cria os itens de trabalho, participa
+     * do processamento e aguarda até que todas as partições estejam concluídas.
+     * Em um processo retomado os itens existentes são reaproveitados e só os não concluídos voltam à fila.
+     */
+    public long executarCargaDistribuida(String processoId, String collectionOrigem, String collectionDestino,
+                                         Document estagioProjecao) {
+        Query queryProcesso = new Query(Criteria.where("processo_id").is(processoId));
+        List<ParticaoTrabalho> itens = controlMongoTemplate.find(Query.of(queryProcesso), ParticaoTrabalho.class);
+
+        if (!itens.isEmpty()) {
+            long reabertos = controlMongoTemplate.updateMulti(Query.of(queryProcesso)
+                            .addCriteria(Criteria.where("status").in(StatusParticao.ERRO, StatusParticao.CANCELADO)),
+                    new Update()
+                            .set("status", StatusParticao.PENDENTE)
+                            .set("tentativas", 0)
+                            .unset("dono")
+                            .unset("erro_detalhes"),
+                    ParticaoTrabalho.class).getModifiedCount();
+            logger.info("Retomando carga distribuída - Processo ID: {} | Partições: {} | Reabertas: {}",
+                    processoId, itens.size(), reabertos);
+        } else {
+            List<Document> particoes = cargaParticionadaService.calcularParticoes(collectionOrigem);
+            planejadorIndicesService.prepararCollectionDestino(processoId, collectionDestino, true);
+
+            for (int i = 0; i < particoes.size(); i++) {
+                Document faixa = particoes.get(i).get("_id", Document.class);
+                ParticaoTrabalho item = new ParticaoTrabalho(processoId, i, particoes.size(),
+                        collectionOrigem, collectionDestino);
+                item.setIdMinimo(faixa.get("min"));
+                item.setIdMaximo(faixa.get("max"));
+                item.setMaximoInclusivo(i == particoes.size() - 1);
+                item.setDocumentos(((Number) particoes.get(i).get("count")).longValue());
+                item.setEstagioProjecao(estagioProjecao);
+                itens.add(item);
+            }
+            controlMongoTemplate.insertAll(itens);
+            logger.info("Carga distribuída criada - Processo ID: {} | Partições: {}", processoId, itens.size());
+        }
+
+        progressoFluxoService.adicionarDocumentosEsperados(processoId,
+                itens.stream().mapToLong(ParticaoTrabalho::getDocumentos).sum());
+        long documentosConcluidos = 0L;
+
+        while (true) {
+            // O coordenador também processa partições enquanto houver itens disponíveis
+            while (processarProximoItem(processoId)) {
+                jobFluxoService.verificarCancelamento(processoId);
+            }
+            jobFluxoService.verificarCancelamento(processoId);
+
+            List<ParticaoTrabalho> itensConcluidos = controlMongoTemplate.find(Query.of(queryProcesso)
+                    .addCriteria(Criteria.where("status").is(StatusParticao.CONCLUIDO)), ParticaoTrabalho.class);
+            long concluidos = itensConcluidos.size();
+
+            // Progresso inclui as partições concluídas pelas demais réplicas
+            long documentos = itensConcluidos.stream().mapToLong(ParticaoTrabalho::getDocumentos).sum();
+            progressoFluxoService.adicionarDocumentosProcessados(processoId, documentos - documentosConcluidos);
+            documentosConcluidos = documentos;
+            long comErro = controlMongoTemplate.count(Query.of(queryProcesso)
+                    .addCriteria(Criteria.where("status").is(StatusParticao.ERRO)), ParticaoTrabalho.class);
+
+            if (comErro > 0) {
+                throw new RuntimeException(comErro + " partição(ões) da carga distribuída falharam após "
+                        + maximoTentativas + " tentativas");
+            }
+            if (concluidos == itens.size()) {
+                break;
+            }
+
+            try {
+                Thread.sleep(Duration.ofSeconds(esperaCoordenadorSegundos).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Carga distribuída interrompida", e);
+            }
+        }
+
+        return itens.stream().mapToLong(ParticaoTrabalho::getDocumentos).sum();
+    }
+
+    /**
+     * Worker de cada réplica: reivindica partições pendentes de qualquer processo
+     */
+    @Scheduled(fixedDelayString = "${app.work.poll-seconds:5}", timeUnit = TimeUnit.SECONDS)
+    public void processarItensPendentes() {
+        if (!MODO_CARGA_DISTRIBUIDO.equalsIgnoreCase(modoCarga)) {
+            return;
+        }
+        try {
+            while (processarProximoItem(null)) {
+                // continua reivindicando
+            }
+        } catch (Exception e) {
+            logger.error("Erro no worker da carga distribuída", e);
+        }
+    }
+
+    /**
+     * Heartbeat: renova o lease dos itens em processamento neste nó
+     */
+    @Scheduled(fixedDelayString = "${app.lock.heartbeat-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public void renovarLeasesItens() {
+        for (String idItem : itensEmProcessamento) {
+            try {
+                colecaoItens().updateOne(
+                        new Document("_id", idBanco(idItem)).append("dono", leaseProcessoService.getIdNo()),
+                        Collections.singletonList(new Document("$set", new Document("lease_expira_em", expiracao()))));
+            } catch (Exception e) {
+                logger.error("Erro ao renovar lease do item {}", idItem, e);
+            }
+        }
+    }
+
+    /**
+     * Progresso da carga por nó: partições e documentos agrupados por dono e status
+     */
+    public Map<String, Object> obterProgresso(String processoId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("processo_id").is(processoId)),
+                Aggregation.group("dono", "status")
+                        .count().as("particoes")
+                        .sum("documentos").as("documentos"),
+                Aggregation.sort(Sort.Direction.ASC, "_id.dono"));
+
+        List<Document> grupos = controlMongoTemplate.aggregate(aggregation, ParticaoTrabalho.class, Document.class)
+                .getMappedResults();
+
+        Map<String, Map<String, Object>> porNo = new HashMap<>();
+        long totalParticoes = 0L;
+        long concluidas = 0L;
+        for (Document grupo : grupos) {
+            Document chave = grupo.get("_id", Document.class);
+            String dono = chave.get("dono") != null ? chave.getString("dono") : "SEM_DONO";
+            String status = String.valueOf(chave.get("status"));
+            long particoes = ((Number) grupo.get("particoes")).longValue();
+
+            porNo.computeIfAbsent(dono, d -> new HashMap<>())
+                    .put(status, Map.of("particoes", particoes, "documentos", grupo.get("documentos")));
+            totalParticoes += particoes;
+            if (StatusParticao.CONCLUIDO.name().equals(status)) {
+                concluidas += particoes;
+            }
+        }
+
+        Map<String, Object> progresso = new HashMap<>();
+        progresso.put("processoId", processoId);
+        progresso.put("totalParticoes", totalParticoes);
+        progresso.put("particoesConcluidas", concluidas);
+        progresso.put("nos", porNo);
+        progresso.put("dataConsulta", LocalDateTime.now());
+        return progresso;
+    }
+
+    /**
+     * Reivindica e processa o próximo item disponível. Retorna false se não houver item.
+     */
+    private boolean processarProximoItem(String processoId) {
+        String idNo = leaseProcessoService.getIdNo();
+
+        // Disponível: pendente ou em processamento com lease expirado no relógio do servidor (dono caiu)
+        Document filtro = new Document("$or", Arrays.asList(
+                new Document("status", StatusParticao.PENDENTE.name()),
+                new Document("status", StatusParticao.EM_PROCESSAMENTO.name())
+                        .append("$expr", new Document("$lt", Arrays.asList("$lease_expira_em", "$$NOW")))));
+        if (processoId != null) {
+            filtro.append("processo_id", processoId);
+        }
+
+        Document reivindicado = colecaoItens().findOneAndUpdate(filtro,
+                Collections.singletonList(new Document("$set", new Document()
+                        .append("status", StatusParticao.EM_PROCESSAMENTO.name())
+                        .append("dono", new Document("$literal", idNo))
+                        .append("lease_expira_em", expiracao())
+                        .append("data_inicio", "$$NOW")
+                        .append("tentativas", new Document("$add", Arrays.asList(
+                                new Document("$ifNull", Arrays.asList("$tentativas", 0)), 1))))),
+                new FindOneAndUpdateOptions().sort(new Document("indice", 1)).returnDocument(ReturnDocument.AFTER));
+
+        if (reivindicado == null) {
+            return false;
+        }
+        ParticaoTrabalho item = controlMongoTemplate.getConverter().read(ParticaoTrabalho.class, reivindicado);
+
+        itensEmProcessamento.add(item.getId());
+        // Só o dono de um item ainda em processamento o finaliza: um item cancelado nesse meio-tempo continua cancelado
+        Query queryDono = new Query(Criteria.where("_id").is(item.getId()).and("dono").is(idNo)
+                .and("status").is(StatusParticao.EM_PROCESSAMENTO));
+        try {
+            cargaParticionadaService.carregarParticao(item.getProcessoId(), item.getCollectionOrigem(),
+                    item.getCollectionDestino(),
+                    item.getEstagioProjecao(), item.getIdMinimo(), item.getIdMaximo(),
+                    Boolean.TRUE.equals(item.getMaximoInclusivo()), item.getDocumentos(),
+                    item.getIndice(), item.getTotal());
+
+            long concluido = controlMongoTemplate.updateFirst(queryDono,
+                    new Update()
+                            .set("status", StatusParticao.CONCLUIDO)
+                            .set("data_fim", LocalDateTime.now())
+                            .unset("lease_expira_em"),
+                    ParticaoTrabalho.class).getModifiedCount();
+            if (concluido == 0) {
+                logger.warn("Partição {} cancelada ou reatribuída durante a carga - Processo ID: {}",
+                        item.getIndice() + 1, item.getProcessoId());
+            }
+
+        } catch (Exception e) {
+            boolean esgotado = item.getTentativas() >= maximoTentativas;
+            logger.error("Falha na partição {} (tentativa {}/{}) - Processo ID: {}",
+                    item.getIndice() + 1, item.getTentativas(), maximoTentativas, item.getProcessoId(), e);
+
+            controlMongoTemplate.updateFirst(queryDono,
+                    new Update()
+                            .set("status", esgotado ? StatusParticao.ERRO : StatusParticao.PENDENTE)
+                            .set("erro_detalhes", e.getMessage())
+                            .unset("lease_expira_em"),
+                    ParticaoTrabalho.class);
+        } finally {
+            itensEmProcessamento.remove(item.getId());
+        }
+        return true;
+    }
+
+    private MongoCollection<Document> colecaoItens() {
+        return controlMongoTemplate.getCollection(controlMongoTemplate.getCollectionName(ParticaoTrabalho.class));
+    }
+
+    // _id gerado pelo Spring é gravado como ObjectId, como no mapeamento das consultas por Query
+    private Object idBanco(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    // Instante de expiração do lease do item calculado no servidor
+    private Document expiracao() {
+        return new Document("$add", Arrays.asList("$$NOW", TimeUnit.SECONDS.toMillis(duracaoLeaseSegundos)));
+    }
+
+    /**
+     * Cancela os itens ainda abertos do processo (cancelamento solicitado pelo coordenador)
+     */
+    public void cancelarItensDoProcesso(String processoId) {
+        long cancelados = controlMongoTemplate.updateMulti(
+                new Query(Criteria.where("processo_id").regex("^" + Pattern.quote(processoId))
+                        .and("status").in(StatusParticao.PENDENTE, StatusParticao.EM_PROCESSAMENTO)),
+                new Update().set("status", StatusParticao.CANCELADO),
+                ParticaoTrabalho.class).getModifiedCount();
+        logger.warn("{} partição(ões) canceladas - Processo ID: {}", cancelados, processoId);
+    }
+
+    /**
+     * Remove os itens do processo e de suas datas (processoId_yyyyMMdd) após a conclusão, junto com os checkpoints
+     */
+    public void removerItensDoProcesso(String processoId) {
+        long removidos = controlMongoTemplate.remove(
+                new Query(Criteria.where("processo_id").regex("^" + Pattern.quote(processoId))),
+                ParticaoTrabalho.class).getDeletedCount();
+        logger.debug("{} partição(ões) removidas - Processo ID: {}", removidos, processoId);
+    }
+
+    /**
+     * Itens ainda abertos de processos anteriores (coordenador que caiu) não devem mais ser processados.
+     * Itens do processo atual e de suas datas (processoId_yyyyMMdd) são preservados.
+     */
+    public void cancelarItensDeOutrosProcessos(String processoId) {
+        long cancelados = controlMongoTemplate.updateMulti(
+                new Query(Criteria.where("processo_id").not().regex("^" + Pattern.quote(processoId))
+                        .and("status").in(StatusParticao.PENDENTE, StatusParticao.EM_PROCESSAMENTO)),
+                new Update().set("status", StatusParticao.CANCELADO),
+                ParticaoTrabalho.class).getModifiedCount();
+        if (cancelados > 0) {
+            logger.warn("{} partição(ões) de processos anteriores canceladas - Processo ID: {}", cancelados, processoId);
+        }
+    }
+}
@@ -0,0 +1,624 @@
+package com.example.atlasdfmongodb.service;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ClusteredIndexOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Esquema dos documentos gravados em temp_yyyyMMdd.
+ * padrao: {validade: "valido"|"invalido", dados: {corp, cpf, ...}, hInclReg} com os campos em texto de largura fixa.
+ * compacto: {v: true|false, d: {co, cp, ...}, h} com números em long, indicadores em boolean e texto sem o
+ * preenchimento à direita. O $project do pipeline e o parser no cliente seguem as mesmas regras.
+ * Com a quarentena ativa o registro também é validado campo a campo e o inválido leva o motivo; no modo
+ * parser os inválidos vão para a collection de quarentena na mesma passada e temp_yyyyMMdd só tem válidos.
+ * Com despacho por tipo de registro cada registro usa o layout do seu prefixo: detalhes válidos levam o
+ * nome do layout (layout | l) e cabeçalhos e rodapés são gravados como {controle | c, dados | d, hInclReg | h},
+ * sem campo de validade, para a conferência das quantidades.
+ */
+@Service
+public class EsquemaSaidaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EsquemaSaidaService.class);
+
+    public static final String ESQUEMA_COMPACTO = "compacto";
+
+    private static final Codec<Document> CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    private LayoutRegistroService layoutRegistroService;
+
+    @Value("${app.output.schema:padrao}")
+    private String esquema;
+
+    @Value("${app.output.economy-sample-size:1000}")
+    private int tamanhoAmostra;
+
+    @Value("${app.output.clustered:false}")
+    private boolean clusterizada;
+
+    @Value("${app.quarantine.enabled:false}")
+    private boolean quarentena;
+
+    @Value("${app.load.mode:out}")
+    private String modoCarga;
+
+    private DespachoLayouts despacho;
+
+    // Primeiro layout de detalhe: identidade do cartão e índices, comuns a todos os detalhes
+    private LayoutRegistro layout;
+
+    // Estágios de projeção montados uma única vez a partir dos layouts compilados
+    private Document estagioProjecao;
+    private Document estagioProjecaoComId;
+
+    @PostConstruct
+    public void inicializar() {
+        despacho = layoutRegistroService.getDespacho();
+        layout = despacho.principal();
+        estagioProjecao = montarEstagioProjecao(false);
+        estagioProjecaoComId = montarEstagioProjecao(true);
+        logger.debug("Estágio de projeção do layout {}: {}", layout.nome, estagioProjecao.toJson());
+    }
+
+    public boolean isCompacto() {
+        return ESQUEMA_COMPACTO.equalsIgnoreCase(esquema);
+    }
+
+    /**
+     * Collection temporária clusterizada por _id = (corp, cpf, num_cartao) nos registros válidos,
+     * dispensando o índice único secundário
+     */
+    public boolean isClusterizada() {
+        return clusterizada;
+    }
+
+    /**
+     * Validação campo a campo com motivo nos registros inválidos
+     */
+    public boolean isQuarentena() {
+        return quarentena;
+    }
+
+    /**
+     * Inválidos gravados fora de temp_yyyyMMdd: apenas o parser separa os registros na mesma passada,
+     * pois um pipeline de agregação tem um único estágio de saída
+     */
+    public boolean isQuarentenaSeparada() {
+        return quarentena && "parser".equalsIgnoreCase(modoCarga);
+    }
+
+    /**
+     * Layout do registro pelo tipo (prefixo de DATA), ou null quando o tipo é desconhecido
+     */
+    LayoutRegistro layoutDoRegistro(String data) {
+        return despacho.selecionar(data);
+    }
+
+    /**
+     * Motivo de invalidade do registro no seu layout, ou null se válido (sem quarentena só o tipo e o
+     * tamanho são verificados)
+     */
+    String motivoInvalidade(LayoutRegistro layoutRegistro, String data) {
+        if (layoutRegistro == null) {
+            return ParserRegistroFixo.MOTIVO_TIPO_DESCONHECIDO;
+        }
+        if (quarentena) {
+            return ParserRegistroFixo.motivoInvalidade(layoutRegistro, data);
+        }
+        return ParserRegistroFixo.isTamanhoValido(layoutRegistro, data) ? null : ParserRegistroFixo.MOTIVO_TAMANHO_INVALIDO;
+    }
+
+    /**
+     * Campo que indica se o registro é válido
+     */
+    public String campoValidade() {
+        return isCompacto() ? "v" : "validade";
+    }
+
+    /**
+     * Valor de campoValidade() nos registros válidos
+     */
+    public Object valorValido() {
+        return isCompacto() ? Boolean.TRUE : "valido";
+    }
+
+    /**
+     * Valor de campoValidade() nos registros inválidos
+     */
+    public Object valorInvalido() {
+        return isCompacto() ? Boolean.FALSE : "invalido";
+    }
+
+    /**
+     * Campo com o nome do layout nos registros de controle, que não têm campo de validade
+     */
+    public String campoControle() {
+        return isCompacto() ? "c" : "controle";
+    }
+
+    /**
+     * Campo com os dados fatiados do registro
+     */
+    public String campoDados() {
+        return isCompacto() ? "d" : "dados";
+    }
+
+    // Nome do layout nos detalhes válidos quando há despacho por tipo
+    private String campoLayout() {
+        return isCompacto() ? "l" : "layout";
+    }
+
+    /**
+     * Fatiamento no cliente conforme o esquema configurado; motivo é o resultado de motivoInvalidade
+     */
+    Document converter(LayoutRegistro layoutRegistro, String data, Date hInclReg, String motivo) {
+        if (motivo != null && (quarentena || layoutRegistro == null)) {
+            return ParserRegistroFixo.converterInvalido(data, hInclReg, quarentena ? motivo : null, isCompacto());
+        }
+        if (motivo == null && layoutRegistro.isControle()) {
+            return ParserRegistroFixo.converterControle(layoutRegistro, data, hInclReg, isCompacto());
+        }
+        Document documento = isCompacto()
+                ? ParserRegistroFixo.converterCompacto(layoutRegistro, data, hInclReg)
+                : ParserRegistroFixo.converter(layoutRegistro, data, hInclReg);
+        if (despacho.isDespacho() && isValido(documento)) {
+            documento.append(campoLayout(), layoutRegistro.nome);
+        }
+        if (!clusterizada || !isValido(documento)) {
+            // Sem _id o driver gera um ObjectId
+            return documento;
+        }
+
+        Document dados = documento.get(campoDados(), Document.class);
+        Document identidade = new Document();
+        for (int campo : layout.identidade) {
+            identidade.append(campo(campo), dados.get(campo(campo)));
+        }
+        Document comId = new Document("_id", identidade);
+        comId.putAll(documento);
+        return comId;
+    }
+
+    /**
+     * Impressão digital de 64 bits da identidade do cartão de um registro válido
+     */
+    long impressaoDigital(LayoutRegistro layoutRegistro, String data) {
+        return ParserRegistroFixo.impressaoDigital(layoutRegistro, data);
+    }
+
+    /**
+     * Texto exato da identidade do cartão de um registro válido
+     */
+    String identidade(LayoutRegistro layoutRegistro, String data) {
+        return ParserRegistroFixo.identidade(layoutRegistro, data);
+    }
+
+    public boolean isValido(Document documento) {
+        return valorValido().equals(documento.get(campoValidade()));
+    }
+
+    /**
+     * Filtro do registro válido com a mesma identidade de cartão de um documento convertido
+     */
+    public Document filtroIdentidade(Document documento) {
+        if (clusterizada) {
+            return new Document("_id", documento.get("_id"));
+        }
+        String prefixo = campoDados();
+        Document dados = documento.get(prefixo, Document.class);
+        Document filtro = new Document(campoValidade(), valorValido());
+        for (int campo : layout.identidade) {
+            filtro.append(prefixo + "." + campo(campo), dados.get(campo(campo)));
+        }
+        return filtro;
+    }
+
+    /**
+     * Estágio de projeção já montado para o layout (não deve ser alterado pelo chamador).
+     * Com manterId o _id de origem é preservado, permitindo upsert via $merge.
+     */
+    public Document obterEstagioProjecao(boolean manterId) {
+        return manterId ? estagioProjecaoComId : estagioProjecao;
+    }
+
+    /**
+     * Estágio $project com validação e estruturação do registro DATA.
+     * Com a quarentena o estágio é um $replaceWith que calcula o motivo uma única vez por registro.
+     * Com despacho por tipo o $replaceWith escolhe, por um $switch no prefixo de DATA, o documento do
+     * layout do registro; tipo desconhecido gera um registro inválido.
+     */
+    private Document montarEstagioProjecao(boolean manterId) {
+        if (!despacho.isDespacho()) {
+            Document documento = montarDetalhe(layout, manterId);
+            if (!quarentena) {
+                return new Document("$project", documento);
+            }
+            return new Document("$replaceWith", comMotivo(layout, ajustarId(documento)));
+        }
+
+        List<Document> ramos = new ArrayList<>();
+        for (LayoutRegistro layoutRegistro : despacho.layouts) {
+            Document documento = layoutRegistro.isControle()
+                    ? montarControle(layoutRegistro, manterId)
+                    : ajustarId(montarDetalhe(layoutRegistro, manterId));
+            ramos.add(new Document("case", new Document("$eq", Arrays.asList("$$tipo", new Document("$literal", layoutRegistro.tipo))))
+                    .append("then", comMotivo(layoutRegistro, documento)));
+        }
+        Document desconhecido = ajustarId(new Document("_id", manterId || clusterizada ? 1 : 0)
+                .append(campoValidade(), valorInvalido())
+                .append(campoDados(), montarInvalido(quarentena ? ParserRegistroFixo.MOTIVO_TIPO_DESCONHECIDO : null))
+                .append(isCompacto() ? "h" : "hInclReg", "$$NOW"));
+
+        return new Document("$replaceWith", new Document("$let", new Document()
+            .append("vars", new Document("tipo", new Document("$substrCP", Arrays.asList("$DATA", 0, despacho.tamanhoTipo))))
+            .append("in", new Document("$switch", new Document("branches", ramos).append("default", desconhecido)))));
+    }
+
+    /**
+     * Documento de um registro de detalhe, válido ou inválido conforme o tamanho (ou o motivo, com a quarentena)
+     */
+    private Document montarDetalhe(LayoutRegistro layoutRegistro, boolean manterId) {
+        Document tamanhoValido = tamanhoValido(layoutRegistro);
+        Document dados = montarDados(layoutRegistro);
+
+        // Clusterizada: _id é a identidade do cartão nos válidos e o _id de origem nos inválidos
+        Object id = manterId ? 1 : 0;
+        if (clusterizada) {
+            Document identidade = new Document();
+            for (int campo : layout.identidade) {
+                identidade.append(campo(campo), dados.get(campo(campo)));
+            }
+            id = new Document("$cond", new Document()
+                .append("if", tamanhoValido)
+                .append("then", identidade)
+                .append("else", "$_id"));
+        }
+
+        Document documento = new Document()
+            .append("_id", id)
+            .append(campoValidade(), new Document("$cond", new Document()
+                .append("if", tamanhoValido)
+                .append("then", valorValido())
+                .append("else", valorInvalido())))
+            .append(campoDados(), new Document("$cond", new Document()
+                .append("if", tamanhoValido)
+                .append("then", dados)
+                .append("else", montarInvalido(quarentena ? "$$motivo" : null))))
+            .append(isCompacto() ? "h" : "hInclReg", "$$NOW");
+        if (despacho.isDespacho()) {
+            documento.append(campoLayout(), new Document("$cond", Arrays.asList(
+                    tamanhoValido, new Document("$literal", layoutRegistro.nome), "$$REMOVE")));
+        }
+        return documento;
+    }
+
+    /**
+     * Documento de um registro de controle ({controle, dados, hInclReg}, sem campo de validade) ou, fora
+     * do layout, o registro inválido
+     */
+    private Document montarControle(LayoutRegistro layoutRegistro, boolean manterId) {
+        int id = manterId || clusterizada ? 1 : 0;
+        Document controle = ajustarId(new Document("_id", id)
+            .append(campoControle(), new Document("$literal", layoutRegistro.nome))
+            .append(campoDados(), montarDados(layoutRegistro))
+            .append(isCompacto() ? "h" : "hInclReg", "$$NOW"));
+        Document invalido = ajustarId(new Document("_id", id)
+            .append(campoValidade(), valorInvalido())
+            .append(campoDados(), montarInvalido(quarentena ? "$$motivo" : null))
+            .append(isCompacto() ? "h" : "hInclReg", "$$NOW"));
+        return new Document("$cond", Arrays.asList(tamanhoValido(layoutRegistro), controle, invalido));
+    }
+
+    private Document tamanhoValido(LayoutRegistro layoutRegistro) {
+        return quarentena
+                ? new Document("$eq", Arrays.asList("$$motivo", null))
+                : new Document("$eq", Arrays.asList(new Document("$strLenCP", "$DATA"), layoutRegistro.tamanho));
+    }
+
+    private Document montarDados(LayoutRegistro layoutRegistro) {
+        Document dados = new Document();
+        for (int i = 0; i < layoutRegistro.campos.length; i++) {
+            Document fatia = fatia(layoutRegistro, i);
+            if (isCompacto()) {
+                dados.append(layoutRegistro.compactos[i], expressaoCompacta(fatia, layoutRegistro, i));
+            } else {
+                dados.append(layoutRegistro.campos[i], fatia);
+            }
+        }
+        return dados;
+    }
+
+    private Document montarInvalido(String motivo) {
+        Document invalido = new Document(isCompacto() ? "o" : "original", "$DATA");
+        if (motivo != null) {
+            invalido.append(isCompacto() ? "m" : "motivo", motivo);
+        }
+        return invalido;
+    }
+
+    // $replaceWith não tem inclusão/exclusão: sem _id o $out/$merge gera um novo
+    private Document ajustarId(Document documento) {
+        Object id = documento.get("_id");
+        if (Integer.valueOf(0).equals(id)) {
+            documento.remove("_id");
+        } else if (Integer.valueOf(1).equals(id)) {
+            documento.put("_id", "$_id");
+        }
+        return documento;
+    }
+
+    private Document comMotivo(LayoutRegistro layoutRegistro, Document documento) {
+        if (!quarentena) {
+            return documento;
+        }
+        return new Document("$let", new Document()
+            .append("vars", new Document("motivo", expressaoMotivo(layoutRegistro)))
+            .append("in", documento));
+    }
+
+    /**
+     * Mesmas regras de ParserRegistroFixo.motivoInvalidade em um $switch avaliado na ordem das regras
+     */
+    private Document expressaoMotivo(LayoutRegistro layoutRegistro) {
+        List<Document> regras = new ArrayList<>();
+        regras.add(new Document("case", new Document("$ne", Arrays.asList(
+                new Document("$strLenCP", "$DATA"), layoutRegistro.tamanho)))
+                .append("then", ParserRegistroFixo.MOTIVO_TAMANHO_INVALIDO));
+        for (int i = 0; i < layoutRegistro.validados.length; i++) {
+            Document fatia = fatia(layoutRegistro, layoutRegistro.validados[i]);
+            Document invalido;
+            if (layoutRegistro.validacoes[i] == LayoutRegistro.Validacao.NUMERICO) {
+                invalido = new Document("$not", Arrays.asList(
+                        new Document("$regexMatch", new Document("input", fatia).append("regex", "^[0-9]+$"))));
+            } else {
+                invalido = new Document("$eq", Arrays.asList(new Document("$trim", new Document("input", fatia)), ""));
+                if (!layoutRegistro.valoresValidos.get(i).isEmpty()) {
+                    invalido = new Document("$or", Arrays.asList(invalido, new Document("$not", Arrays.asList(
+                            new Document("$in", Arrays.asList(fatia, new ArrayList<>(layoutRegistro.valoresValidos.get(i))))))));
+                }
+            }
+            regras.add(new Document("case", invalido).append("then", layoutRegistro.motivos[i]));
+        }
+
+        return new Document("$switch", new Document("branches", regras).append("default", null));
+    }
+
+    private Document fatia(LayoutRegistro layoutRegistro, int campo) {
+        // Offsets em code points, como o $strLenCP da validação e o fatiamento do parser ($substr conta bytes UTF-8)
+        return new Document("$substrCP", Arrays.asList("$DATA", layoutRegistro.inicios[campo], layoutRegistro.tamanhos[campo]));
+    }
+
+    /**
+     * Mesmas regras de ParserRegistroFixo.valorCompacto em expressão de agregação: a conversão é testada
+     * na fatia inteira, sem corte, e só o texto que permanece texto perde os espaços à direita
+     */
+    private Object expressaoCompacta(Document fatia, LayoutRegistro layoutRegistro, int campo) {
+        Document texto = new Document("$rtrim", new Document("input", "$$f").append("chars", " "));
+        int tamanho = layoutRegistro.tamanhos[campo];
+        String[] dominio = layoutRegistro.dominios[campo];
+        Object conversao;
+        if (layoutRegistro.tipos[campo] == LayoutRegistro.TipoCampo.NUMERICO && tamanho <= 18) {
+            conversao = new Document("$cond", Arrays.asList(
+                    new Document("$regexMatch", new Document("input", "$$f").append("regex", "^[0-9]{" + tamanho + "}$")),
+                    new Document("$toLong", "$$f"),
+                    texto));
+        } else if (layoutRegistro.tipos[campo] == LayoutRegistro.TipoCampo.INDICADOR && dominio != null) {
+            conversao = new Document("$switch", new Document()
+                    .append("branches", Arrays.asList(
+                            new Document("case", new Document("$eq", Arrays.asList("$$f", dominio[0]))).append("then", true),
+                            new Document("case", new Document("$eq", Arrays.asList("$$f", dominio[1]))).append("then", false)))
+                    .append("default", texto));
+        } else {
+            return new Document("$rtrim", new Document("input", fatia).append("chars", " "));
+        }
+        return new Document("$let", new Document("vars", new Document("f", fatia)).append("in", conversao));
+    }
+
+    /**
+     * Remove a collection de destino (recriar) e, se clusterizada, cria-a com o índice clusterizado em _id.
+     * Deve anteceder a carga: uma collection existente não pode ser convertida em clusterizada.
+     */
+    public void prepararCollectionDestino(String nomeCollection, boolean recriar) {
+        if (recriar) {
+            flatMongoTemplate.dropCollection(nomeCollection);
+        }
+        if (clusterizada && !flatMongoTemplate.collectionExists(nomeCollection)) {
+            flatMongoTemplate.getDb().createCollection(nomeCollection, new CreateCollectionOptions()
+                    .clusteredIndexOptions(new ClusteredIndexOptions(new Document("_id", 1), true)
+                            .name("idx_identidade_cartao")));
+            logger.info("Collection clusterizada {} criada", nomeCollection);
+        }
+    }
+
+    /**
+     * Índices da collection temporária: validade e único parcial (apenas registros válidos) em cpf,
+     * num_cartao e corp. Na collection clusterizada a unicidade já é garantida pelo _id.
+     * Com a quarentena separada a collection só tem válidos: sem índice de validade e sem filtro parcial.
+     */
+    public List<IndexModel> modelosIndices() {
+        List<IndexModel> modelos = new ArrayList<>();
+        boolean separada = isQuarentenaSeparada();
+        if (!separada) {
+            modelos.add(new IndexModel(new Document(campoValidade(), 1), new IndexOptions().name("idx_validade")));
+        }
+        if (clusterizada) {
+            return modelos;
+        }
+
+        String dados = isCompacto() ? "d." : "dados.";
+        Document dadosIndex = new Document();
+        for (int campo : layout.chaveIndice) {
+            dadosIndex.append(dados + campo(campo), 1);
+        }
+        IndexOptions opcoes = new IndexOptions().name("idx_dados_validos_unique").unique(true);
+        if (!separada) {
+            opcoes.partialFilterExpression(new Document(campoValidade(), valorValido()));
+        }
+        modelos.add(new IndexModel(dadosIndex, opcoes));
+        return modelos;
+    }
+
+    // Nome do campo do layout no esquema configurado
+    private String campo(int campo) {
+        return isCompacto() ? layout.compactos[campo] : layout.campos[campo];
+    }
+
+    /**
+     * Tamanhos da collection compacta e economia estimada em relação ao esquema padrão.
+     * A estimativa compara, em uma amostra, o BSON de cada documento com o do documento padrão
+     * equivalente (e as chaves dos índices) e aplica a proporção aos tamanhos reais da collection.
+     */
+    public Document medirEconomia(String nomeCollection) {
+        MongoCollection<Document> collection = flatMongoTemplate.getCollection(nomeCollection);
+        Document estatisticas = collection.aggregate(Collections.singletonList(
+                new Document("$collStats", new Document("storageStats", new Document()))))
+                .first()
+                .get("storageStats", Document.class);
+
+        long tamanhoDados = numero(estatisticas.get("size"));
+        long tamanhoArmazenamento = numero(estatisticas.get("storageSize"));
+        Document tamanhosIndices = estatisticas.get("indexSizes", new Document());
+        long tamanhoIndices = numero(tamanhosIndices.get("idx_validade")) + numero(tamanhosIndices.get("idx_dados_validos_unique"));
+
+        long bytesCompacto = 0L;
+        long bytesPadrao = 0L;
+        long chavesCompacto = 0L;
+        long chavesPadrao = 0L;
+        int amostra = 0;
+        List<Document> pipelineAmostra = Collections.singletonList(
+                new Document("$sample", new Document("size", tamanhoAmostra)));
+        for (Document documento : collection.aggregate(pipelineAmostra)) {
+            if (!documento.containsKey("v")) {
+                // Registro de controle: poucos por carga, fora da estimativa
+                continue;
+            }
+            LayoutRegistro layoutRegistro = layoutDoDocumento(documento);
+            Document padrao = equivalentePadrao(documento, layoutRegistro);
+            bytesCompacto += tamanhoBson(documento);
+            bytesPadrao += tamanhoBson(padrao);
+
+            // Chave de idx_validade em todos os documentos; chave única apenas nos válidos (sem ela na clusterizada)
+            chavesCompacto += tamanhoChave(documento.get("v"));
+            chavesPadrao += tamanhoChave(padrao.get("validade"));
+            if (!clusterizada && Boolean.TRUE.equals(documento.get("v"))) {
+                Document dados = documento.get("d", Document.class);
+                Document dadosPadrao = padrao.get("dados", Document.class);
+                for (int campo : layoutRegistro.chaveIndice) {
+                    chavesCompacto += tamanhoChave(dados.get(layoutRegistro.compactos[campo]));
+                    chavesPadrao += tamanhoChave(dadosPadrao.get(layoutRegistro.campos[campo]));
+                }
+            }
+            amostra++;
+        }
+
+        double fatorDados = bytesCompacto > 0 ? (double) bytesPadrao / bytesCompacto : 1.0;
+        double fatorIndices = chavesCompacto > 0 ? (double) chavesPadrao / chavesCompacto : 1.0;
+
+        Document economia = new Document()
+                .append("documentos", numero(estatisticas.get("count")))
+                .append("amostra", amostra)
+                .append("tamanho_dados_bytes", tamanhoDados)
+                .append("tamanho_armazenamento_bytes", tamanhoArmazenamento)
+                .append("tamanho_indices_bytes", tamanhoIndices)
+                .append("economia_dados_bytes", Math.round(tamanhoDados * (fatorDados - 1)))
+                .append("economia_armazenamento_bytes", Math.round(tamanhoArmazenamento * (fatorDados - 1)))
+                .append("economia_indices_bytes", Math.round(tamanhoIndices * (fatorIndices - 1)))
+                .append("percentual_economia_dados", Math.round((1 - 1 / fatorDados) * 10000.0) / 100.0)
+                .append("percentual_economia_indices", Math.round((1 - 1 / fatorIndices) * 10000.0) / 100.0);
+        logger.debug("Economia do esquema compacto na collection {}: {}", nomeCollection, economia.toJson());
+        return economia;
+    }
+
+    // Layout de um detalhe compacto gravado: o do campo l com despacho por tipo, senão o único
+    private LayoutRegistro layoutDoDocumento(Document compacto) {
+        LayoutRegistro layoutRegistro = despacho.isDespacho() ? despacho.porNome(compacto.getString("l")) : null;
+        return layoutRegistro != null ? layoutRegistro : layout;
+    }
+
+    /**
+     * Documento no esquema padrão com o mesmo conteúdo de um documento compacto
+     */
+    private Document equivalentePadrao(Document compacto, LayoutRegistro layoutRegistro) {
+        Document dadosCompactos = compacto.get("d", new Document());
+        Document padrao = new Document("_id", compacto.get("_id"));
+        if (Boolean.TRUE.equals(compacto.get("v"))) {
+            Document dados = new Document();
+            for (int i = 0; i < layoutRegistro.campos.length; i++) {
+                dados.append(layoutRegistro.campos[i],
+                        larguraFixa(dadosCompactos.get(layoutRegistro.compactos[i]), layoutRegistro, i));
+            }
+            padrao.append("validade", "valido").append("dados", dados);
+        } else {
+            Document dados = new Document("original", dadosCompactos.get("o"));
+            if (dadosCompactos.containsKey("m")) {
+                dados.append("motivo", dadosCompactos.get("m"));
+            }
+            padrao.append("validade", "invalido").append("dados", dados);
+        }
+        padrao.append("hInclReg", compacto.get("h"));
+        if (compacto.containsKey("l")) {
+            padrao.append("layout", compacto.get("l"));
+        }
+        return padrao;
+    }
+
+    // Inversa exata da conversão compacta: largura contada em code points, como no fatiamento
+    private String larguraFixa(Object valor, LayoutRegistro layoutRegistro, int campo) {
+        int tamanho = layoutRegistro.tamanhos[campo];
+        if (valor instanceof Long numero) {
+            return String.format("%0" + tamanho + "d", numero);
+        }
+        if (valor instanceof Boolean indicador) {
+            return layoutRegistro.dominios[campo][indicador ? 0 : 1];
+        }
+        StringBuilder texto = new StringBuilder(String.valueOf(valor));
+        for (int i = texto.codePointCount(0, texto.length()); i < tamanho; i++) {
+            texto.append(' ');
+        }
+        return texto.toString();
+    }
+
+    private long tamanhoBson(Document documento) {
+        return new RawBsonDocument(documento, CODEC).getByteBuffer().remaining();
+    }
+
+    // Tamanho aproximado do valor na chave do índice (tipo + conteúdo)
+    private long tamanhoChave(Object valor) {
+        if (valor instanceof Long) {
+            return 9;
+        }
+        if (valor instanceof Boolean) {
+            return 2;
+        }
+        return 6 + String.valueOf(valor).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private long numero(Object valor) {
+        return valor instanceof Number numero ? numero.longValue() : 0L;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.EstatisticasCarga;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estatísticas da collection temporária calculadas em uma única passada
+ * e mantidas em cache por processoId até o fim do processo.
+ */
+@Service
+public class EstatisticasCargaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstatisticasCargaService.class);
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    private final Map<String, EstatisticasCarga> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Retorna as estatísticas do processo, calculando-as apenas se ainda não estiverem em cache
+     */
+    public EstatisticasCarga obterEstatisticas(String processoId, String nomeCollection) {
+        return cache.computeIfAbsent(processoId, id -> calcularEstatisticas(nomeCollection));
+    }
+
+    /**
+     * Como obterEstatisticas, somando os inválidos da collection de quarentena quando ela é separada
+     */
+    public EstatisticasCarga obterEstatisticas(String processoId, String nomeCollection, String nomeQuarentena) {
+        if (!esquemaSaidaService.isQuarentenaSeparada()) {
+            return obterEstatisticas(processoId, nomeCollection);
+        }
+        return cache.computeIfAbsent(processoId, id -> {
+            EstatisticasCarga carga = calcularEstatisticas(nomeCollection);
+            // Cartões repetidos em quarentena não são registros inválidos
+            long invalidos = flatMongoTemplate.getCollection(nomeQuarentena).countDocuments(
+                    new Document("motivo", new Document("$ne", CargaParserService.MOTIVO_CARTAO_DUPLICADO)));
+            return new EstatisticasCarga(carga.getTotal() + invalidos, carga.getValidos(), carga.getInvalidos() + invalidos);
+        });
+    }
+
+    /**
+     * Registra contadores já apurados durante a carga, dispensando a consulta
+     */
+    public void registrar(String processoId, EstatisticasCarga estatisticas) {
+        cache.put(processoId, estatisticas);
+    }
+
+    /**
+     * Remove o processo do cache ao final da execução
+     */
+    public void descartar(String processoId) {
+        cache.remove(processoId);
+    }
+
+    /**
+     * Conta total, válidos e inválidos com um único $group sobre o campo de validade do esquema.
+     * Registros de controle (cabeçalhos e rodapés) não têm o campo e ficam fora do total.
+     */
+    private EstatisticasCarga calcularEstatisticas(String nomeCollection) {
+        long total = 0L;
+        long validos = 0L;
+        long invalidos = 0L;
+
+        for (Document grupo : flatMongoTemplate.getCollection(nomeCollection).aggregate(Collections.singletonList(
+                new Document("$group", new Document("_id", "$" + esquemaSaidaService.campoValidade())
+                        .append("quantidade", new Document("$sum", 1)))))) {
+            long quantidade = ((Number) grupo.get("quantidade")).longValue();
+            if (esquemaSaidaService.valorValido().equals(grupo.get("_id"))) {
+                validos = quantidade;
+                total += quantidade;
+            } else if (esquemaSaidaService.valorInvalido().equals(grupo.get("_id"))) {
+                invalidos = quantidade;
+                total += quantidade;
+            }
+        }
+
+        EstatisticasCarga estatisticas = new EstatisticasCarga(total, validos, invalidos);
+        logger.debug("Estatísticas calculadas para collection {}: {}", nomeCollection, estatisticas);
+        return estatisticas;
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.atlasdfmongodb.service;
 
+import com.example.atlasdfmongodb.model.EstatisticasCarga;
+import com.example.atlasdfmongodb.model.JobFluxo;
+import com.example.atlasdfmongodb.model.LoadData;
 import com.example.atlasdfmongodb.model.ProcessControl;
 import com.example.atlasdfmongodb.model.ProcessLog;
 import com.example.atlasdfmongodb.repository.ProcessControlRepository;
@@ -17,12 +20,15 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import com.mongodb.client.model.IndexOptions;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 public class FluxoPrincipalService {
@@ -50,6 +56,54 @@ public class FluxoPrincipalService {
     @Autowired
     private LoadDataRepository loadDataRepository;
 
+    @Autowired
+    private CargaParticionadaService cargaParticionadaService;
+
+    @Autowired
+    private CargaParserService cargaParserService;
+
+    @Autowired
+    private EstatisticasCargaService estatisticasCargaService;
+
+    @Autowired
+    private CargaIncrementalService cargaIncrementalService;
+
+    @Autowired
+    private LeaseProcessoService leaseProcessoService;
+
+    @Autowired
+    private DistribuicaoCargaService distribuicaoCargaService;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private JobFluxoService jobFluxoService;
+
+    @Autowired
+    private ProgressoFluxoService progressoFluxoService;
+
+    @Autowired
+    private ContadoresLogService contadoresLogService;
+
+    @Autowired
+    private GravacaoLogsService gravacaoLogsService;
+
+    @Autowired
+    private ArmazenamentoLogsService armazenamentoLogsService;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private ConferenciaControleService conferenciaControleService;
+
+    @Autowired
+    private PlanejadorIndicesService planejadorIndicesService;
+
+    @Autowired
+    private PublicacaoCollectionService publicacaoCollectionService;
+
     // Configurações das coleções
     @Value("${mongodb.principal.collection.flat}")
     private String collectionFlat;
@@ -73,138 +127,246 @@ public class FluxoPrincipalService {
     @Value("${mongodb.atlas.cluster-name}")
     private String atlasClusterName;
 
+    // Modo de carga da Etapa 2: "out" (pipeline único), "particionado", "parser" (fatiamento no cliente),
+    // "incremental" (apenas o delta após o watermark) ou "distribuido" (partições entre réplicas)
+    private static final String MODO_CARGA_PARTICIONADO = "particionado";
+    private static final String MODO_CARGA_PARSER = "parser";
+    private static final String MODO_CARGA_INCREMENTAL = "incremental";
+    private static final String MODO_CARGA_DISTRIBUIDO = "distribuido";
+
+    @Value("${app.load.mode:out}")
+    private String modoCarga;
+
+    // Processamento de todas as datas 'pronto' pendentes, com limite de datas simultâneas
+    @Value("${app.backlog.enabled:false}")
+    private boolean backlogHabilitado;
+
+    @Value("${app.backlog.max-concurrent-dates:2}")
+    private int maximoDatasConcorrentes;
+
+    private static final DateTimeFormatter FORMATO_LOAD_DATA = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter FORMATO_COLLECTION = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    // Chaves de checkpoint: datas selecionadas na Etapa 1 e etapas concluídas por data
+    private static final String CHECKPOINT_DATAS = "DATAS";
+    private static final String CHECKPOINT_ETAPA_2 = "ETAPA_2";
+    private static final String CHECKPOINT_ETAPA_3 = "ETAPA_3";
+    private static final String CHECKPOINT_ETAPA_4 = "ETAPA_4";
+
     /**
-     * Execução agendada do fluxo principal
+     * Execução do fluxo principal, disparada pelo GatilhoFluxoService (cron ou change stream)
      */
-    @Scheduled(cron = "${app.scheduler.cron}")
     public void executarFluxoPrincipal() {
         String processoId = UUID.randomUUID().toString();
         logger.info("Iniciando fluxo principal - Processo ID: {}", processoId);
 
+        // Verificar controle de concorrência
+        logger.info("Verificando controle de concorrência - Processo ID: {}", processoId);
+        if (!verificarEIniciarProcesso(processoId)) {
+            logger.warn("Processo já em execução em outro nó. Abortando - Processo ID: {}", processoId);
+            return;
+        }
+        logger.info("Controle de concorrência OK, prosseguindo - Processo ID: {}", processoId);
+
+        executarProcesso(processoId);
+    }
+
+    /**
+     * Execução manual do fluxo principal, sujeita ao mesmo lease da execução agendada.
+     * O lease é adquirido na chamada e o fluxo roda no executor de jobs.
+     * Com retomar, reexecuta o último processo com erro pulando etapas e partições já concluídas.
+     */
+    public JobFluxo submeterFluxoManual(boolean retomar) {
+        String processoId;
+        if (retomar) {
+            ProcessControl controle = processControlRepository.findControlDocument()
+                    .filter(c -> c.getStatus() == ProcessControl.StatusProcesso.ERRO
+                            || c.getStatus() == ProcessControl.StatusProcesso.CANCELADO)
+                    .orElseThrow(() -> new IllegalStateException("Nenhum processo com erro para retomar"));
+            processoId = controle.getProcessoId();
+            logger.info("Retomando fluxo principal manual - Processo ID: {}", processoId);
+        } else {
+            processoId = UUID.randomUUID().toString();
+            logger.info("Iniciando fluxo principal manual - Processo ID: {}", processoId);
+        }
+
+        if (!verificarEIniciarProcesso(processoId)) {
+            throw new IllegalStateException("Processo já em execução: lease de execução em uso por outro processo");
+        }
+
+        return jobFluxoService.submeter(processoId, retomar, () -> executarProcesso(processoId));
+    }
+
+    /**
+     * Executa as etapas do fluxo com o lease já adquirido, libera o lease ao final e retorna o status gravado
+     */
+    private ProcessControl.StatusProcesso executarProcesso(String processoId) {
+        progressoFluxoService.iniciar(processoId);
+        ProcessControl.StatusProcesso status = ProcessControl.StatusProcesso.ERRO;
         try {
-            // Verificar controle de concorrência
-            logger.info("Verificando controle de concorrência - Processo ID: {}", processoId);
-            if (!verificarEIniciarProcesso(processoId)) {
-                logger.warn("Processo já em execução ou com erro. Abortando - Processo ID: {}", processoId);
-                return;
+            if (MODO_CARGA_DISTRIBUIDO.equalsIgnoreCase(modoCarga)) {
+                distribuicaoCargaService.cancelarItensDeOutrosProcessos(processoId);
             }
-            logger.info("Controle de concorrência OK, prosseguindo - Processo ID: {}", processoId);
 
             // Etapa 1: Verificação de Dados Disponíveis
             logger.info("Iniciando Etapa 1: Verificação de Dados Disponíveis - Processo ID: {}", processoId);
-            if (!executarEtapa1VerificacaoDados(processoId)) {
+            List<LocalDate> datas = executarEtapa1VerificacaoDados(processoId);
+            gravacaoLogsService.descarregar();
+            if (datas.isEmpty()) {
                 logger.info("Etapa 1 falhou: Nenhum dado para processar - Processo ID: {}", processoId);
-                finalizarProcessoComStatus(processoId, ProcessControl.StatusProcesso.PRONTO);
-                return;
+                status = ProcessControl.StatusProcesso.PRONTO;
+                finalizarProcessoComStatus(processoId, status);
+                return status;
             }
-            logger.info("Etapa 1 concluída com sucesso - Processo ID: {}", processoId);
-
-            // Etapa 2: Processamento e Validação de Dados
-            logger.info("Iniciando Etapa 2: Processamento e Validação de Dados - Processo ID: {}", processoId);
-            executarEtapa2ProcessamentoValidacao(processoId);
-            logger.info("Etapa 2 concluída com sucesso - Processo ID: {}", processoId);
+            logger.info("Etapa 1 concluída com sucesso - Processo ID: {} | Datas: {}", processoId, datas);
 
-            // Etapa 3: Coleta de Estatísticas e Métricas
-            logger.info("Iniciando Etapa 3: Coleta de Estatísticas e Métricas - Processo ID: {}", processoId);
-            executarEtapa3ColetaEstatisticas(processoId);
-            logger.info("Etapa 3 concluída com sucesso - Processo ID: {}", processoId);
-
-            // Etapa 4: Limpeza e Finalização
-            logger.info("Iniciando Etapa 4: Limpeza e Finalização - Processo ID: {}", processoId);
-            executarEtapa4LimpezaFinalizacao(processoId);
-            logger.info("Etapa 4 concluída com sucesso - Processo ID: {}", processoId);
+            if (datas.size() == 1) {
+                processarData(processoId, datas.get(0));
+            } else {
+                processarBacklog(processoId, datas);
+            }
 
-            // Finalizar processo com sucesso
-            finalizarProcessoComStatus(processoId, ProcessControl.StatusProcesso.PROCESSADO);
+            status = ProcessControl.StatusProcesso.PROCESSADO;
+            finalizarProcessoComStatus(processoId, status);
+            checkpointService.remover(processoId);
+            if (MODO_CARGA_DISTRIBUIDO.equalsIgnoreCase(modoCarga)) {
+                distribuicaoCargaService.removerItensDoProcesso(processoId);
+            }
 
             logger.info("Fluxo principal concluído com sucesso - Processo ID: {}", processoId);
+            return status;
 
         } catch (Exception e) {
+            // Limpa a interrupção do cancelamento para que a finalização consiga gravar no banco
+            Thread.interrupted();
+            if (leaseProcessoService.isLeasePerdido(processoId)) {
+                // Outro nó assumiu o lease: não grava status nem cancela itens, que agora pertencem a ele
+                logger.error("Fluxo principal interrompido por perda do lease - Processo ID: {}", processoId);
+                ProcessLog log = new ProcessLog(processoId, "Execução interrompida: lease assumido por outro nó", "LEASE_PERDIDO", "ERRO");
+                log.finalizarEtapa();
+                gravacaoLogsService.registrar(log);
+                gravacaoLogsService.descarregar();
+                return status;
+            }
+            if (jobFluxoService.isCancelado(processoId)) {
+                logger.warn("Fluxo principal cancelado - Processo ID: {}", processoId);
+                if (MODO_CARGA_DISTRIBUIDO.equalsIgnoreCase(modoCarga)) {
+                    distribuicaoCargaService.cancelarItensDoProcesso(processoId);
+                }
+                status = ProcessControl.StatusProcesso.CANCELADO;
+                finalizarProcessoComStatus(processoId, status);
+                return status;
+            }
             logger.error("Erro durante execução do fluxo principal - Processo ID: {}", processoId, e);
             finalizarProcessoComErro(processoId, e.getMessage());
+            return status;
+        } finally {
+            jobFluxoService.limparCancelamento(processoId);
+            leaseProcessoService.descartar(processoId);
+            progressoFluxoService.finalizar(processoId, status);
         }
     }
 
     /**
-     * Execução manual do fluxo principal
+     * Executa as Etapas 2 a 4 para uma data de referência, pulando as que já têm checkpoint
      */
-    public ProcessControl executarFluxoManual() {
-        String processoId = UUID.randomUUID().toString();
-        ProcessControl controle = new ProcessControl(ProcessControl.StatusProcesso.PRONTO, processoId);
-        
+    private void processarData(String processoId, LocalDate data) {
         try {
-            logger.info("Iniciando fluxo principal manual - Processo ID: {}", processoId);
-            controle.setStatus(ProcessControl.StatusProcesso.EM_EXECUCAO);
-            controle.setDataAtualizacao(LocalDateTime.now());
-            processControlRepository.save(controle);
-
-            // Etapa 1: Verificação de Dados Disponíveis
-            if (!executarEtapa1VerificacaoDados(processoId)) {
-                return controle;
-            }
-
             // Etapa 2: Processamento e Validação de Dados
-            executarEtapa2ProcessamentoValidacao(processoId);
+            jobFluxoService.verificarCancelamento(processoId);
+            if (checkpointService.isConcluido(processoId, CHECKPOINT_ETAPA_2)) {
+                logger.info("Etapa 2 já concluída, reaproveitando collection temporária - Processo ID: {}", processoId);
+            } else {
+                logger.info("Iniciando Etapa 2: Processamento e Validação de Dados - Processo ID: {} | Data: {}", processoId, data);
+                executarEtapa2ProcessamentoValidacao(processoId, data);
+                gravacaoLogsService.descarregar();
+                checkpointService.registrar(processoId, CHECKPOINT_ETAPA_2, null);
+                logger.info("Etapa 2 concluída com sucesso - Processo ID: {}", processoId);
+            }
 
             // Etapa 3: Coleta de Estatísticas e Métricas
-            executarEtapa3ColetaEstatisticas(processoId);
+            jobFluxoService.verificarCancelamento(processoId);
+            if (checkpointService.isConcluido(processoId, CHECKPOINT_ETAPA_3)) {
+                logger.info("Etapa 3 já concluída - Processo ID: {}", processoId);
+            } else {
+                logger.info("Iniciando Etapa 3: Coleta de Estatísticas e Métricas - Processo ID: {}", processoId);
+                executarEtapa3ColetaEstatisticas(processoId, data);
+                gravacaoLogsService.descarregar();
+                checkpointService.registrar(processoId, CHECKPOINT_ETAPA_3, null);
+                logger.info("Etapa 3 concluída com sucesso - Processo ID: {}", processoId);
+            }
 
             // Etapa 4: Limpeza e Finalização
-            executarEtapa4LimpezaFinalizacao(processoId);
-
-            controle.setStatus(ProcessControl.StatusProcesso.PROCESSADO);
+            jobFluxoService.verificarCancelamento(processoId);
+            if (checkpointService.isConcluido(processoId, CHECKPOINT_ETAPA_4)) {
+                logger.info("Etapa 4 já concluída - Processo ID: {}", processoId);
+            } else {
+                logger.info("Iniciando Etapa 4: Limpeza e Finalização - Processo ID: {}", processoId);
+                executarEtapa4LimpezaFinalizacao(processoId, data);
+                gravacaoLogsService.descarregar();
+                checkpointService.registrar(processoId, CHECKPOINT_ETAPA_4, null);
+                logger.info("Etapa 4 concluída com sucesso - Processo ID: {}", processoId);
+            }
 
-        } catch (Exception e) {
-            logger.error("Erro durante execução do fluxo principal - Processo ID: {}", processoId, e);
-            controle.setStatus(ProcessControl.StatusProcesso.ERRO);
-            controle.setErroDetalhes(e.getMessage());
-            controle.setDataAtualizacao(LocalDateTime.now());
+            // Data concluída com sucesso: avança o watermark da carga incremental
+            cargaIncrementalService.confirmarWatermark(processoId);
         } finally {
-            processControlRepository.save(controle);
+            estatisticasCargaService.descartar(processoId);
+            cargaIncrementalService.descartarWatermark(processoId);
+            planejadorIndicesService.descartar(processoId);
         }
+    }
+
+    /**
+     * Processa várias datas pendentes em paralelo, limitado por app.backlog.max-concurrent-dates.
+     * Cada data usa o identificador processoId_yyyyMMdd em seus logs e na load_data.
+     */
+    private void processarBacklog(String processoId, List<LocalDate> datas) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maximoDatasConcorrentes, datas.size())));
+        Map<LocalDate, Future<?>> resultados = new LinkedHashMap<>();
+
+        try {
+            for (LocalDate data : datas) {
+                String processoIdData = processoId + "_" + data.format(FORMATO_COLLECTION);
+                resultados.put(data, executor.submit(() -> processarData(processoIdData, data)));
+            }
+
+            // As datas são independentes: uma falha não interrompe as demais
+            List<String> falhas = new ArrayList<>();
+            for (Map.Entry<LocalDate, Future<?>> resultado : resultados.entrySet()) {
+                try {
+                    resultado.getValue().get();
+                } catch (ExecutionException e) {
+                    logger.error("Erro no processamento da data {} - Processo ID: {}", resultado.getKey(), processoId, e.getCause());
+                    falhas.add(resultado.getKey() + ": " + e.getCause().getMessage());
+                }
+            }
 
-        return controle;
+            if (!falhas.isEmpty()) {
+                throw new RuntimeException("Falha no processamento de " + falhas.size() + " de " + datas.size()
+                        + " datas: " + String.join("; ", falhas));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Processamento do backlog interrompido", e);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
-     * Verifica controle de concorrência e inicia processo
+     * Verifica controle de concorrência e inicia processo.
+     * O lease é adquirido atomicamente; um lease expirado (nó que caiu) é assumido automaticamente.
      */
     private boolean verificarEIniciarProcesso(String processoId) {
         try {
-            logger.debug("Buscando documento de controle existente - Processo ID: {}", processoId);
-            Optional<ProcessControl> controleExistente = processControlRepository.findControlDocument();
-            
-            if (controleExistente.isPresent()) {
-                ProcessControl controle = controleExistente.get();
-                logger.info("Controle existente encontrado - Status: {}, Processo ID anterior: {}", 
-                    controle.getStatus(), controle.getProcessoId());
-                    
-                if (controle.getStatus() == ProcessControl.StatusProcesso.EM_EXECUCAO) {
-                    logger.warn("Processo já em execução. Status: {}, Processo ID: {}", 
-                        controle.getStatus(), controle.getProcessoId());
-                    return false;
-                }
-                if (controle.getStatus() == ProcessControl.StatusProcesso.ERRO) {
-                    logger.warn("Processo anterior terminou com erro. Status: {}, Erro: {}, Processo ID: {}", 
-                        controle.getStatus(), controle.getErroDetalhes(), controle.getProcessoId());
-                    return false;
-                }
-                logger.info("Status do controle permite nova execução: {}", controle.getStatus());
-            } else {
-                logger.info("Nenhum controle existente encontrado, criando novo");
+            if (!leaseProcessoService.adquirir(processoId)) {
+                return false;
             }
             
-            // Criar ou atualizar controle de processo
-            ProcessControl novoControle = controleExistente.orElse(new ProcessControl());
-            novoControle.setProcessoId(processoId);
-            novoControle.setStatus(ProcessControl.StatusProcesso.EM_EXECUCAO);
-            novoControle.setDataAtualizacao(LocalDateTime.now());
-            logger.info("Salvando novo controle - Status: EM_EXECUCAO, Processo ID: {}", processoId);
-            processControlRepository.save(novoControle);
-            
             // Log de início
             ProcessLog log = new ProcessLog(processoId, "Processo iniciado", "INICIO", "EM_ANDAMENTO");
-            processLogRepository.save(log);
+            gravacaoLogsService.registrar(log);
             logger.info("Log de início criado para processo ID: {}", processoId);
             
             return true;
@@ -215,34 +377,66 @@ public class FluxoPrincipalService {
     }
 
     /**
-     * Etapa 1: Validação - Verifica se há dados para processar
+     * Etapa 1: Validação - Verifica se há dados para processar e retorna as datas pendentes.
+     * Com o backlog habilitado retorna todas as datas 'pronto' até hoje; caso contrário apenas hoje.
      */
-    private boolean executarEtapa1VerificacaoDados(String processoId) {
+    private List<LocalDate> executarEtapa1VerificacaoDados(String processoId) {
         ProcessLog log = new ProcessLog(processoId, "Iniciando validação de dados", "VALIDACAO");
-        processLogRepository.save(log);
+        gravacaoLogsService.registrar(log);
         
         try {
             LocalDate hoje = LocalDate.now();
-            String dataAtual = hoje.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            
-            Query query = new Query(Criteria.where("data").is(dataAtual).and("status").is("pronto"));
-            boolean existemDados = controlMongoTemplate.exists(query, collectionLoadData);
+            List<LocalDate> datas = new ArrayList<>();
+
+            // Processo retomado: mantém as datas selecionadas na execução original
+            Document datasCheckpoint = checkpointService.obter(processoId, CHECKPOINT_DATAS);
+            if (datasCheckpoint != null) {
+                for (String data : datasCheckpoint.getList("datas", String.class)) {
+                    datas.add(LocalDate.parse(data, FORMATO_LOAD_DATA));
+                }
+                log.setMensagem("Processo retomado com as datas: " + datas);
+                log.finalizarEtapa();
+                gravacaoLogsService.registrar(log);
+                return datas;
+            }
+
+            if (backlogHabilitado) {
+                TreeSet<LocalDate> pendentes = new TreeSet<>();
+                for (LoadData loadData : loadDataRepository.findByStatus("pronto")) {
+                    LocalDate data = LocalDate.parse(loadData.getData(), FORMATO_LOAD_DATA);
+                    if (!data.isAfter(hoje)) {
+                        pendentes.add(data);
+                    }
+                }
+                datas.addAll(pendentes);
+                if (datas.size() > 1 && !isOrigemPorData()) {
+                    // Sem {data} todas as datas carregariam o mesmo flat e seriam publicadas como dias distintos
+                    throw new IllegalStateException("Backlog de " + datas.size() + " datas " + datas
+                            + " exige origem por data: mongodb.principal.collection.flat sem o marcador {data}");
+                }
+            } else if (loadDataRepository.existsProntoByData(hoje.format(FORMATO_LOAD_DATA))) {
+                datas.add(hoje);
+            }
             
-            if (!existemDados) {
-                log.setMensagem("Nenhum dado disponível para processamento na data atual: " + dataAtual);
+            if (datas.isEmpty()) {
+                log.setMensagem("Nenhum dado disponível para processamento na data atual: " + hoje.format(FORMATO_LOAD_DATA));
                 log.finalizarEtapa();
-                processLogRepository.save(log);
-                return false;
+                gravacaoLogsService.registrar(log);
+                return datas;
             }
             
-            log.setMensagem("Dados disponíveis para processamento encontrados");
+            List<String> datasFormatadas = new ArrayList<>();
+            datas.forEach(data -> datasFormatadas.add(data.format(FORMATO_LOAD_DATA)));
+            checkpointService.registrar(processoId, CHECKPOINT_DATAS, new Document("datas", datasFormatadas));
+
+            log.setMensagem("Dados disponíveis para processamento encontrados nas datas: " + datas);
             log.finalizarEtapa();
-            processLogRepository.save(log);
-            return true;
+            gravacaoLogsService.registrar(log);
+            return datas;
             
         } catch (Exception e) {
              log.finalizarEtapaComErro(e.getMessage());
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              throw new RuntimeException("Erro na etapa de validação", e);
          }
      }
@@ -250,106 +444,182 @@ public class FluxoPrincipalService {
      /**
       * Etapa 2: Movimentação de Dados
       */
-     private void executarEtapa2ProcessamentoValidacao(String processoId) {
+     private void executarEtapa2ProcessamentoValidacao(String processoId, LocalDate data) {
          // Processar e validar dados do bradesco.flat para temp_YYYYMMDD
-         executarEtapa2Parte1MovimentacaoDados(processoId);
+         executarEtapa2Parte1MovimentacaoDados(processoId, data);
      }
 
      /**
       * Etapa 2: Movimentação de dados usando $out
       */
-     private void executarEtapa2Parte1MovimentacaoDados(String processoId) {
-         LocalDate hoje = LocalDate.now();
-         String dataFormatada = hoje.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-         String collectionTempComData = "temp_" + dataFormatada;
+     private void executarEtapa2Parte1MovimentacaoDados(String processoId, LocalDate data) {
+         String collectionOrigem = nomeCollectionOrigem(data);
+         String collectionTempComData = nomeCollectionCarga(data);
          
          ProcessLog log = new ProcessLog(processoId, "Iniciando processamento e validação de dados com pipeline de agregação", "PROCESSAMENTO_VALIDACAO_DADOS");
-         processLogRepository.save(log);
+         gravacaoLogsService.registrar(log);
          
-         try {             
-             // Pipeline de agregação para validação, projeção e saída dos dados
-             List<Document> pipeline = Arrays.asList(
-                 // Etapa 1: Projeção com validação e estruturação dos dados
-                 new Document("$project", new Document()
-                     .append("_id", 0)
-                     .append("validade", new Document("$cond", new Document()
-                         .append("if", new Document("$eq", Arrays.asList(
-                             new Document("$strLenCP", "$DATA"), 122)))
-                         .append("then", "valido")
-                         .append("else", "invalido")))
-                     .append("dados", new Document("$cond", new Document()
-                         .append("if", new Document("$eq", Arrays.asList(
-                             new Document("$strLenCP", "$DATA"), 122)))
-                         .append("then", new Document()
-                             .append("corp", new Document("$substr", Arrays.asList("$DATA", 0, 2)))
-                             .append("cpf", new Document("$substr", Arrays.asList("$DATA", 2, 11)))
-                             .append("num_cartao", new Document("$substr", Arrays.asList("$DATA", 13, 16)))
-                             .append("bandeira", new Document("$substr", Arrays.asList("$DATA", 29, 1)))
-                             .append("desc_produto", new Document("$substr", Arrays.asList("$DATA", 30, 50)))
-                             .append("lim_produto", new Document("$substr", Arrays.asList("$DATA", 80, 1)))
-                             .append("lim_global", new Document("$substr", Arrays.asList("$DATA", 81, 1)))
-                             .append("conta", new Document("$substr", Arrays.asList("$DATA", 82, 16))))
-                         .append("else", new Document("original", "$DATA"))))
-                     .append("hInclReg", "$$NOW")),
-                 
-                 // Etapa 2: Saída para collection temporária com data
-                 new Document("$out", new Document("atlas", new Document()
-                     .append("db", "bradesco_flat")
-                     .append("coll", collectionTempComData)
-                     .append("projectId", atlasProjectId)
-                     .append("clusterName", atlasClusterName)))
-             );
-             
-             // Executar pipeline no banco principal
-             primaryMongoTemplate.getCollection(collectionFlat).aggregate(pipeline).toCollection();
+         try {
+             PlanejadorIndicesService.Estrategia estrategiaIndices = planejadorIndicesService.planejar(processoId);
+             boolean incremental = MODO_CARGA_INCREMENTAL.equalsIgnoreCase(modoCarga);
+             boolean distribuido = MODO_CARGA_DISTRIBUIDO.equalsIgnoreCase(modoCarga);
+             boolean particionado = MODO_CARGA_PARTICIONADO.equalsIgnoreCase(modoCarga);
+             // Preservar o _id de origem torna o upsert e o reprocessamento de partições idempotentes
+             // (o $merge substitui o documento já gravado em vez de inserir uma cópia com novo ObjectId)
+             Document estagioProjecao = esquemaSaidaService.obterEstagioProjecao(incremental || distribuido || particionado);
+
+             if (distribuido) {
+                 // Partições como itens de trabalho processados por todas as réplicas
+                 long documentos = distribuicaoCargaService.executarCargaDistribuida(
+                         processoId, collectionOrigem, collectionTempComData, estagioProjecao);
+                 log.setDocumentosProcessados(documentos);
+             } else if (incremental) {
+                 // Upsert do delta na collection do dia, preservando o _id de origem
+                 cargaIncrementalService.executarCargaIncremental(
+                         processoId, collectionOrigem, collectionTempComData, estagioProjecao,
+                         data.format(FORMATO_COLLECTION));
+             } else if (MODO_CARGA_PARSER.equalsIgnoreCase(modoCarga)) {
+                 // Leitura em lotes do cursor e fatiamento do registro no cliente; esperados pelos metadados da
+                 // origem, sem contagem, e processados publicados a cada lote gravado
+                 progressoFluxoService.adicionarDocumentosEsperados(processoId,
+                         primaryMongoTemplate.getCollection(collectionOrigem).estimatedDocumentCount());
+                 long documentos = cargaParserService.executarCarga(
+                         processoId, collectionOrigem, collectionTempComData, nomeCollectionQuarentena(data));
+                 log.setDocumentosProcessados(documentos);
+             } else if (particionado) {
+                 // Partições em paralelo gravando na collection temporária com $merge
+                 long documentos = cargaParticionadaService.executarCargaParticionada(
+                         processoId, collectionOrigem, collectionTempComData, estagioProjecao);
+                 log.setDocumentosProcessados(documentos);
+             } else {
+                 Document destinoAtlas = new Document()
+                         .append("db", "bradesco_flat")
+                         .append("coll", collectionTempComData)
+                         .append("projectId", atlasProjectId)
+                         .append("clusterName", atlasClusterName);
+                 Document estagioSaida;
+                 if (esquemaSaidaService.isClusterizada() || estrategiaIndices == PlanejadorIndicesService.Estrategia.PREVIA) {
+                     // $out recriaria a collection sem o índice clusterizado e sem os índices prévios: grava com $merge
+                     // na collection pré-criada, falhando em identidade de cartão repetida como o índice único faria
+                     planejadorIndicesService.prepararCollectionDestino(processoId, collectionTempComData, true);
+                     estagioSaida = new Document("$merge", new Document()
+                         .append("into", new Document("atlas", destinoAtlas))
+                         .append("on", "_id")
+                         .append("whenMatched", "fail")
+                         .append("whenNotMatched", "insert"));
+                 } else {
+                     // Saída para collection temporária com data
+                     planejadorIndicesService.marcarCollectionRecriada(processoId);
+                     estagioSaida = new Document("$out", new Document("atlas", destinoAtlas));
+                 }
+
+                 // O pipeline não informa progresso: esperados pelos metadados da origem e processados
+                 // publicados com as estatísticas da Etapa 3
+                 progressoFluxoService.adicionarDocumentosEsperados(processoId,
+                         primaryMongoTemplate.getCollection(collectionOrigem).estimatedDocumentCount());
+
+                 // Pipeline de agregação para validação, projeção e saída dos dados
+                 List<Document> pipeline = Arrays.asList(estagioProjecao, estagioSaida);
+
+                 // Executar pipeline no banco principal
+                 primaryMongoTemplate.getCollection(collectionOrigem).aggregate(pipeline).comment(processoId).toCollection();
+             }
              
              // Criar índices na collection temporária
              criarIndicesCollectionTemp(collectionTempComData, processoId);
              
              log.setMensagem("Dados processados, validados e movidos com sucesso para collection: " + collectionTempComData);
              log.finalizarEtapa();
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              
          } catch (Exception e) {
              log.finalizarEtapaComErro(e.getMessage());
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              throw new RuntimeException("Erro no processamento e validação de dados", e);
          }
      }
 
+     /**
+      * Nome da collection temporária da data de referência (temp_yyyyMMdd)
+      */
+     private String nomeCollectionTemp(LocalDate data) {
+         return "temp_" + data.format(FORMATO_COLLECTION);
+     }
+
+     /**
+      * Collection de quarentena da data (quarentena_yyyyMMdd)
+      */
+     private String nomeCollectionQuarentena(LocalDate data) {
+         return "quarentena_" + data.format(FORMATO_COLLECTION);
+     }
+
+     /**
+      * Collection em que a carga da data é construída: temp_yyyyMMdd_staging com publicação ativa
+      */
+     private String nomeCollectionCarga(LocalDate data) {
+         return publicacaoCollectionService.nomeCollectionCarga(nomeCollectionTemp(data));
+     }
+
+     /**
+      * Origem com uma collection por data (marcador {data} no nome configurado)
+      */
+     private boolean isOrigemPorData() {
+         return collectionFlat.contains("{data}");
+     }
+
+     /**
+      * Modo "out": um único pipeline ($out ou $merge) sem progresso durante a carga
+      */
+     private boolean isCargaPipelineUnico() {
+         return !(MODO_CARGA_PARTICIONADO.equalsIgnoreCase(modoCarga) || MODO_CARGA_PARSER.equalsIgnoreCase(modoCarga)
+                 || MODO_CARGA_INCREMENTAL.equalsIgnoreCase(modoCarga) || MODO_CARGA_DISTRIBUIDO.equalsIgnoreCase(modoCarga));
+     }
+
+     /**
+      * Nome da collection de origem da data; o marcador {data} é substituído por yyyyMMdd
+      */
+     private String nomeCollectionOrigem(LocalDate data) {
+         return collectionFlat.replace("{data}", data.format(FORMATO_COLLECTION));
+     }
+
      /**
       * Etapa 3: Coleta de Estatísticas e Métricas
       */
-     private void executarEtapa3ColetaEstatisticas(String processoId) {
+     private void executarEtapa3ColetaEstatisticas(String processoId, LocalDate data) {
          ProcessLog log = new ProcessLog(processoId, "Iniciando coleta de estatísticas e métricas", "COLETA_ESTATISTICAS");
-         processLogRepository.save(log);
+         gravacaoLogsService.registrar(log);
          
          try {
-             String dataAtual = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-             String nomeCollectionTemp = "temp_" + dataAtual;
-             
-             // Contar documentos válidos
-             Query queryValidos = new Query(Criteria.where("validade").is("valido"));
-             long countValidos = flatMongoTemplate.count(queryValidos, nomeCollectionTemp);
+             String nomeCollectionTemp = nomeCollectionCarga(data);
              
-             // Contar documentos inválidos
-             Query queryInvalidos = new Query(Criteria.where("validade").is("invalido"));
-             long countInvalidos = flatMongoTemplate.count(queryInvalidos, nomeCollectionTemp);
-             
-             // Contar total de documentos
-             long countTotal = flatMongoTemplate.count(new Query(), nomeCollectionTemp);
+             // Total, válidos e inválidos em uma única passada (reaproveitado na Etapa 4)
+             EstatisticasCarga estatisticas = estatisticasCargaService.obterEstatisticas(processoId, nomeCollectionTemp, nomeCollectionQuarentena(data));
+             long countValidos = estatisticas.getValidos();
+             long countInvalidos = estatisticas.getInvalidos();
+             long countTotal = estatisticas.getTotal();
              
              logger.info("Estatísticas coletadas - Processo ID: {} | Total: {} | Válidos: {} | Inválidos: {}", 
                         processoId, countTotal, countValidos, countInvalidos);
+             if (isCargaPipelineUnico()) {
+                 progressoFluxoService.adicionarDocumentosProcessados(processoId, countTotal);
+             }
              
              log.setMensagem(String.format("Estatísticas coletadas com sucesso - Total: %d | Válidos: %d | Inválidos: %d", 
                            countTotal, countValidos, countInvalidos));
              log.finalizarEtapa();
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
+
+             if (conferenciaControleService.isAtiva()) {
+                 conferirRegistrosControle(processoId, nomeCollectionTemp, estatisticas);
+             }
+
+             if (esquemaSaidaService.isCompacto()) {
+                 registrarEconomiaArmazenamento(processoId, nomeCollectionTemp);
+             }
              
          } catch (Exception e) {
              log.finalizarEtapaComErro("Erro ao coletar estatísticas: " + e.getMessage());
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              logger.error("Erro ao coletar estatísticas - Processo ID: {}", processoId, e);
              throw new RuntimeException("Erro na coleta de estatísticas", e);
          }
@@ -357,41 +627,100 @@ public class FluxoPrincipalService {
 
 
 
+     /**
+      * Publica a collection de staging da data (rename atômico) e retorna o nome da collection publicada
+      */
+     private String publicarCollection(String processoId, LocalDate data) {
+         String nomeCollectionData = nomeCollectionTemp(data);
+         if (!publicacaoCollectionService.isAtiva()) {
+             return nomeCollectionData;
+         }
+
+         ProcessLog log = new ProcessLog(processoId, "Publicando collection: " + nomeCollectionCarga(data), "PUBLICACAO");
+         gravacaoLogsService.registrar(log);
+
+         try {
+             String destino = publicacaoCollectionService.publicar(processoId, nomeCollectionData, data.format(FORMATO_COLLECTION));
+             log.setMensagem("Collection " + nomeCollectionCarga(data) + " publicada em " + destino);
+             log.finalizarEtapa();
+             gravacaoLogsService.registrar(log);
+             gravacaoLogsService.descarregar();
+             return destino;
+         } catch (Exception e) {
+             log.finalizarEtapaComErro(e.getMessage());
+             gravacaoLogsService.registrar(log);
+             throw e;
+         }
+     }
+
+     /**
+      * Confere as quantidades declaradas em cabeçalhos e rodapés com os detalhes carregados; a divergência
+      * (inclusive controle ausente, sinal de arquivo truncado) interrompe o processamento da data
+      */
+     private void conferirRegistrosControle(String processoId, String nomeCollectionTemp, EstatisticasCarga estatisticas) {
+         ProcessLog log = new ProcessLog(processoId, "Conferindo registros de controle da collection: " + nomeCollectionTemp, "CONFERENCIA_CONTROLE");
+         gravacaoLogsService.registrar(log);
+
+         try {
+             Document resumo = conferenciaControleService.conferir(processoId, nomeCollectionTemp, estatisticas);
+             log.setMensagem("Registros de controle conferidos: " + resumo.toJson());
+             log.finalizarEtapa();
+             gravacaoLogsService.registrar(log);
+         } catch (Exception e) {
+             log.finalizarEtapaComErro(e.getMessage());
+             gravacaoLogsService.registrar(log);
+             throw new RuntimeException("Erro na conferência dos registros de controle", e);
+         }
+     }
+
+     /**
+      * Registra o tamanho da collection compacta e a economia estimada de dados e índices.
+      * Uma falha na medição não interrompe o fluxo.
+      */
+     private void registrarEconomiaArmazenamento(String processoId, String nomeCollectionTemp) {
+         ProcessLog log = new ProcessLog(processoId, "Medindo economia do esquema compacto na collection: " + nomeCollectionTemp, "ECONOMIA_ARMAZENAMENTO");
+         gravacaoLogsService.registrar(log);
+
+         try {
+             Document economia = esquemaSaidaService.medirEconomia(nomeCollectionTemp);
+             logger.info("Economia do esquema compacto - Processo ID: {} | Collection: {} | {}",
+                        processoId, nomeCollectionTemp, economia.toJson());
+
+             log.setMensagem(String.format("Esquema compacto - Dados: %d bytes (economia estimada %d bytes, %.2f%%) | "
+                           + "Armazenamento: %d bytes (economia estimada %d bytes) | Índices: %d bytes (economia estimada %d bytes, %.2f%%)",
+                           economia.getLong("tamanho_dados_bytes"), economia.getLong("economia_dados_bytes"),
+                           economia.getDouble("percentual_economia_dados"),
+                           economia.getLong("tamanho_armazenamento_bytes"), economia.getLong("economia_armazenamento_bytes"),
+                           economia.getLong("tamanho_indices_bytes"), economia.getLong("economia_indices_bytes"),
+                           economia.getDouble("percentual_economia_indices")));
+             log.finalizarEtapa();
+             gravacaoLogsService.registrar(log);
+         } catch (Exception e) {
+             log.finalizarEtapaComErro(e.getMessage());
+             gravacaoLogsService.registrar(log);
+             logger.warn("Não foi possível medir a economia do esquema compacto - Processo ID: {}: {}", processoId, e.getMessage());
+         }
+     }
+
       /**
-      * Cria índices na collection temporária
+      * Cria índices na collection temporária e registra a duração de cada um
       */
      private void criarIndicesCollectionTemp(String nomeCollection, String processoId) {
          ProcessLog log = new ProcessLog(processoId, "Criando índices na collection: " + nomeCollection, "CRIAR_INDICES_TEMP");
-         processLogRepository.save(log);
+         gravacaoLogsService.registrar(log);
          
          try {
-             // Criar índice no campo validade
-             Document validadeIndex = new Document("validade", 1);
-             flatMongoTemplate.getCollection(nomeCollection)
-                     .createIndex(validadeIndex, new IndexOptions().name("idx_validade"));
-             
+             // Todos os índices em um único createIndexes, antes ou depois da carga conforme o planejador
+             double duracao = planejadorIndicesService.concluirCarga(processoId, nomeCollection);
              
-             // Criar índice composto único nos campos de dados válidos (apenas para registros válidos)
-             Document dadosIndex = new Document()
-                     .append("dados.cpf", 1)
-                     .append("dados.num_cartao", 1)
-                     .append("dados.corp", 1);
-             
-             IndexOptions dadosIndexOptions = new IndexOptions()
-                     .name("idx_dados_validos_unique")
-                     .unique(true)
-                     .partialFilterExpression(new Document("validade", "valido"));
-             
-             flatMongoTemplate.getCollection(nomeCollection)
-                     .createIndex(dadosIndex, dadosIndexOptions);
-             
-             log.setMensagem("Índices criados com sucesso na collection: " + nomeCollection);
+             log.setMensagem(String.format("Índices criados com sucesso na collection: %s (estratégia %s, createIndexes em %.2f segundos)",
+                           nomeCollection, planejadorIndicesService.obterEstrategia(processoId), duracao));
              log.finalizarEtapa();
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              
          } catch (Exception e) {
              log.finalizarEtapaComErro(e.getMessage());
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              throw new RuntimeException("Erro ao criar índices na collection: " + nomeCollection, e);
          }
      }
@@ -402,24 +731,27 @@ public class FluxoPrincipalService {
      /**
       * Etapa 4: Limpeza e Finalização
       */
-     private void executarEtapa4LimpezaFinalizacao(String processoId) {
+     private void executarEtapa4LimpezaFinalizacao(String processoId, LocalDate data) {
          ProcessLog log = new ProcessLog(processoId, "Iniciando limpeza e finalização", "LIMPEZA_FINALIZACAO");
-         processLogRepository.save(log);
+         gravacaoLogsService.registrar(log);
          
          try {
+             // Publicar a collection já indexada e com estatísticas antes de marcar a data como processada
+             String collectionPublicada = publicarCollection(processoId, data);
+
              // Atualizar status do documento na collection loadData para 'processado'
-             atualizarStatusLoadData(processoId);
+             atualizarStatusLoadData(processoId, data, collectionPublicada);
              
              // Deletar coleção temp
              flatMongoTemplate.dropCollection(collectionTemp);
              
              log.setMensagem("Coleção temp removida e status loadData atualizado com sucesso");
              log.finalizarEtapa();
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              
          } catch (Exception e) {
              log.finalizarEtapaComErro(e.getMessage());
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
              throw new RuntimeException("Erro na limpeza e finalização", e);
          }
      }
@@ -428,12 +760,10 @@ public class FluxoPrincipalService {
      * Atualiza o status do documento na collection loadData para 'processado'
      * e adiciona o array de procedimentos executados, estatísticas e tempo total
      */
-    private void atualizarStatusLoadData(String processoId) {
+    private void atualizarStatusLoadData(String processoId, LocalDate data, String nomeCollectionTemp) {
         try {
-            LocalDate hoje = LocalDate.now();
-            String dataAtual = hoje.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            String dataProcessamento = hoje.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            String nomeCollectionTemp = "temp_" + dataProcessamento;
+            String dataAtual = data.format(FORMATO_LOAD_DATA);
+            String dataProcessamento = data.format(FORMATO_COLLECTION);
             
             // Buscar todos os logs do processo para criar o array de procedimentos
             List<ProcessLog> logs = processLogRepository.findByProcessoIdOrderByDataInicioAsc(processoId);
@@ -448,23 +778,17 @@ public class FluxoPrincipalService {
                         .append("nome", log.getEtapa())
                         .append("tempo_execucao_segundos", log.getTempoTotalSegundos())
                         .append("data_execucao", log.getDataInicio());
+                    if (log.getIndices() != null) {
+                        // Um único createIndexes: a duração é do comando, compartilhada pelos índices listados
+                        procedimento.append("indices", log.getIndices());
+                    }
                     procedimentos.add(procedimento);
                     tempoTotalExecucao += log.getTempoTotalSegundos();
                 }
             }
             
-            // Coletar estatísticas da collection temporária
-            Query queryValidos = new Query(Criteria.where("validade").is("valido"));
-            long countValidos = flatMongoTemplate.count(queryValidos, nomeCollectionTemp);
-            
-            Query queryInvalidos = new Query(Criteria.where("validade").is("invalido"));
-            long countInvalidos = flatMongoTemplate.count(queryInvalidos, nomeCollectionTemp);
-            
-            long countTotal = flatMongoTemplate.count(new Query(), nomeCollectionTemp);
-            
-            // Calcular percentuais
-            double percentualValidos = countTotal > 0 ? Math.round((double) countValidos / countTotal * 100.0 * 100.0) / 100.0 : 0.0;
-            double percentualInvalidos = countTotal > 0 ? Math.round((double) countInvalidos / countTotal * 100.0 * 100.0) / 100.0 : 0.0;
+            // Estatísticas da collection temporária, já calculadas na Etapa 3
+            EstatisticasCarga estatisticas = estatisticasCargaService.obterEstatisticas(processoId, nomeCollectionTemp, nomeCollectionQuarentena(data));
             
             Query query = new Query(Criteria.where("data").is(dataAtual).and("status").is("pronto"));
             Update update = new Update()
@@ -473,17 +797,25 @@ public class FluxoPrincipalService {
                 .set("procedimentos_executados", procedimentos)
                 .set("processoId", processoId)
                 .set("data_processamento_formato", dataProcessamento)
-                .set("totalDocumentos", countTotal)
-                .set("documentosValidos", countValidos)
-                .set("documentosInvalidos", countInvalidos)
-                .set("percentualValidos", percentualValidos)
-                .set("percentualInvalidos", percentualInvalidos)
+                .set("collection", nomeCollectionTemp)
+                .set("totalDocumentos", estatisticas.getTotal())
+                .set("documentosValidos", estatisticas.getValidos())
+                .set("documentosInvalidos", estatisticas.getInvalidos())
+                .set("percentualValidos", estatisticas.getPercentualValidos())
+                .set("percentualInvalidos", estatisticas.getPercentualInvalidos())
                 .set("tempoTotalExecucaoSegundos", Math.round(tempoTotalExecucao * 100.0) / 100.0);
             
+            // Cartões repetidos tratados durante a carga (modo parser com app.duplicates.policy)
+            Document duplicados = checkpointService.obter(processoId, CargaParserService.CHECKPOINT_DUPLICADOS);
+            if (duplicados != null) {
+                update.set("documentosDuplicados", duplicados.get("quantidade"))
+                      .set("politicaDuplicados", duplicados.getString("politica"));
+            }
+            
             controlMongoTemplate.updateMulti(query, update, collectionLoadData);
             
             logger.info("Status dos documentos na collection loadData atualizado para 'processado' na data: {} com {} procedimentos, {} documentos totais, tempo total: {} segundos", 
-                       dataAtual, procedimentos.size(), countTotal, tempoTotalExecucao);
+                       dataAtual, procedimentos.size(), estatisticas.getTotal(), tempoTotalExecucao);
             
         } catch (Exception e) {
             logger.error("Erro ao atualizar status na collection loadData", e);
@@ -496,17 +828,12 @@ public class FluxoPrincipalService {
       */
      private void finalizarProcessoComStatus(String processoId, ProcessControl.StatusProcesso status) {
          try {
-             Optional<ProcessControl> controleOpt = processControlRepository.findByProcessoId(processoId);
-             if (controleOpt.isPresent()) {
-                 ProcessControl controle = controleOpt.get();
-                 controle.setStatus(status);
-                 controle.setDataAtualizacao(LocalDateTime.now());
-                 processControlRepository.save(controle);
-             }
+             leaseProcessoService.liberar(processoId, status, null);
              
              ProcessLog log = new ProcessLog(processoId, "Processo finalizado com status: " + status, "FINALIZACAO");
              log.finalizarEtapa();
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
+             gravacaoLogsService.descarregar();
              
          } catch (Exception e) {
              logger.error("Erro ao finalizar processo com status: {}", status, e);
@@ -518,18 +845,12 @@ public class FluxoPrincipalService {
       */
      private void finalizarProcessoComErro(String processoId, String erroDetalhes) {
          try {
-             Optional<ProcessControl> controleOpt = processControlRepository.findByProcessoId(processoId);
-             if (controleOpt.isPresent()) {
-                 ProcessControl controle = controleOpt.get();
-                 controle.setStatus(ProcessControl.StatusProcesso.ERRO);
-                 controle.setErroDetalhes(erroDetalhes);
-                 controle.setDataAtualizacao(LocalDateTime.now());
-                 processControlRepository.save(controle);
-             }
+             leaseProcessoService.liberar(processoId, ProcessControl.StatusProcesso.ERRO, erroDetalhes);
              
              ProcessLog log = new ProcessLog(processoId, "Processo finalizado com erro: " + erroDetalhes, "ERRO", "ERRO");
              log.finalizarEtapa();
-             processLogRepository.save(log);
+             gravacaoLogsService.registrar(log);
+             gravacaoLogsService.descarregar();
              
          } catch (Exception e) {
              logger.error("Erro ao finalizar processo com erro", e);
@@ -539,11 +860,25 @@ public class FluxoPrincipalService {
 
 
     /**
-     * Método para execução manual via endpoint
+     * Método para execução manual via endpoint: submete o job e retorna sem aguardar o fluxo
+     */
+    public JobFluxo executarManualmente(boolean retomar) {
+        logger.info("Execução manual do fluxo principal solicitada (retomar: {})", retomar);
+        return submeterFluxoManual(retomar);
+    }
+
+    /**
+     * Obtém o estado de um job submetido neste nó
+     */
+    public Optional<JobFluxo> obterJob(String processoId) {
+        return jobFluxoService.obter(processoId);
+    }
+
+    /**
+     * Solicita o cancelamento de um processo em execução neste nó
      */
-    public ProcessControl executarManualmente() {
-        logger.info("Execução manual do fluxo principal solicitada");
-        return executarFluxoManual();
+    public boolean cancelarProcesso(String processoId) {
+        return jobFluxoService.cancelar(processoId);
     }
 
     /**
@@ -564,14 +899,15 @@ public class FluxoPrincipalService {
                 stats.put("erroDetalhes", ultimoProcesso.getErroDetalhes());
             }
             
-            // Estatísticas de logs
-            long totalLogs = processLogRepository.count();
-            long logsComErro = processLogRepository.countByStatus("ERRO");
-            long logsConcluidos = processLogRepository.countByStatus("CONCLUIDO");
+            // Estatísticas de logs a partir dos contadores materializados (leitura pontual)
+            Document contadores = contadoresLogService.obterContadores();
+            Document porStatus = contadores.get("por_status", new Document());
             
-            stats.put("totalLogs", totalLogs);
-            stats.put("logsComErro", logsComErro);
-            stats.put("logsConcluidos", logsConcluidos);
+            stats.put("totalLogs", ((Number) contadores.get("total")).longValue());
+            stats.put("logsComErro", ((Number) porStatus.getOrDefault("ERRO", 0L)).longValue());
+            stats.put("logsConcluidos", ((Number) porStatus.getOrDefault("CONCLUIDO", 0L)).longValue());
+            stats.put("logsPorStatus", porStatus);
+            stats.put("logsPorEtapa", contadores.get("por_etapa", new Document()));
             stats.put("dataConsulta", LocalDateTime.now());
             
         } catch (Exception e) {
@@ -582,6 +918,13 @@ public class FluxoPrincipalService {
         return stats;
     }
 
+    /**
+     * Obtém o progresso da carga distribuída por nó
+     */
+    public Map<String, Object> obterProgressoDistribuicao(String processoId) {
+        return distribuicaoCargaService.obterProgresso(processoId);
+    }
+
     /**
      * Obtém logs de um processo específico
      */
@@ -597,14 +940,20 @@ public class FluxoPrincipalService {
     }
 
     /**
-     * Limpa logs antigos (mais de 30 dias)
+     * Limpa logs mais antigos que app.logs.retention-days. Com TTL ou time-series a remoção é feita
+     * pelo servidor e aqui apenas os contadores são recalculados para refletir os logs expirados.
      */
     @Scheduled(cron = "0 0 2 * * ?") // Todo dia às 2h
     public void limparLogsAntigos() {
         try {
-            LocalDateTime dataLimite = LocalDateTime.now().minusDays(30);
-            processLogRepository.deleteByDataInicioBefore(dataLimite);
-            logger.info("Limpeza de logs antigos executada - Data limite: {}", dataLimite);
+            if (armazenamentoLogsService.isRetencaoNoServidor()) {
+                contadoresLogService.recalcular();
+                logger.info("Logs expirados pelo servidor (modo {}); contadores recalculados", armazenamentoLogsService.getModo());
+                return;
+            }
+            LocalDateTime dataLimite = LocalDateTime.now().minusDays(armazenamentoLogsService.getDiasRetencao());
+            long removidos = contadoresLogService.removerLogsAnteriores(dataLimite);
+            logger.info("Limpeza de logs antigos executada - Data limite: {} | Logs removidos: {}", dataLimite, removidos);
         } catch (Exception e) {
             logger.error("Erro durante limpeza de logs antigos", e);
         }
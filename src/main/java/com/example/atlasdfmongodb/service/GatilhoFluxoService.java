@@ -0,0 +1,223 @@
+package com.example.atlasdfmongodb.service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gatilhos de execução do fluxo principal: agendamento por cron e, quando
+ * habilitado, change stream na collection load_data. Com o change stream ativo
+ * o cron passa a ser apenas um fallback de baixa frequência.
+ */
+@Service
+public class GatilhoFluxoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatilhoFluxoService.class);
+
+    // Código de erro do servidor quando o resume token não está mais no oplog
+    private static final int ERRO_HISTORICO_PERDIDO = 286;
+
+    private static final String ID_RESUME_TOKEN = "change_stream_load_data";
+
+    @Autowired
+    private FluxoPrincipalService fluxoPrincipalService;
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Value("${mongodb.control.collection.loadData}")
+    private String collectionLoadData;
+
+    @Value("${mongodb.control.collection.watermarks:load_watermarks}")
+    private String collectionWatermarks;
+
+    @Value("${app.trigger.change-stream.enabled:false}")
+    private boolean changeStreamHabilitado;
+
+    @Value("${app.trigger.fallback-interval-minutes:30}")
+    private long intervaloFallbackMinutos;
+
+    @Value("${app.trigger.retry-delay-seconds:10}")
+    private long atrasoReconexaoSegundos;
+
+    // Evita execuções simultâneas disparadas pelo cron e pelo change stream no mesmo nó
+    private final ReentrantLock execucaoLock = new ReentrantLock();
+
+    private volatile Instant ultimaExecucao = Instant.EPOCH;
+    private volatile boolean execucaoPendente = false;
+    private volatile boolean ativo = true;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursorAtual;
+    private Thread threadChangeStream;
+
+    /**
+     * Execução agendada do fluxo principal
+     */
+    @Scheduled(cron = "${app.scheduler.cron}")
+    public void executarPorAgendamento() {
+        // Com o change stream ativo o cron só dispara após o intervalo de fallback, sem tocar no banco
+        if (changeStreamHabilitado
+                && Duration.between(ultimaExecucao, Instant.now()).toMinutes() < intervaloFallbackMinutos) {
+            return;
+        }
+        executarFluxo("agendamento");
+    }
+
+    /**
+     * Inicia a escuta do change stream após a subida da aplicação
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarChangeStream() {
+        if (!changeStreamHabilitado) {
+            return;
+        }
+        threadChangeStream = new Thread(this::escutarChangeStream, "gatilho-load-data");
+        threadChangeStream.setDaemon(true);
+        threadChangeStream.start();
+        logger.info("Gatilho por change stream na collection {} iniciado", collectionLoadData);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ativo = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = cursorAtual;
+        if (cursor != null) {
+            cursor.close();
+        }
+        if (threadChangeStream != null) {
+            threadChangeStream.interrupt();
+        }
+    }
+
+    private void escutarChangeStream() {
+        // Sem resume token não há como saber o que foi perdido: executa uma verificação inicial
+        if (carregarResumeToken() == null) {
+            executarFluxo("inicializacao");
+        }
+
+        while (ativo) {
+            BsonDocument resumeToken = carregarResumeToken();
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = abrirCursor(resumeToken)) {
+                cursorAtual = cursor;
+                while (ativo && cursor.hasNext()) {
+                    ChangeStreamDocument<Document> evento = cursor.next();
+                    logger.info("Documento {} da load_data passou para 'pronto', disparando fluxo",
+                            evento.getDocumentKey());
+                    executarFluxo("change-stream");
+                    salvarResumeToken(evento.getResumeToken());
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == ERRO_HISTORICO_PERDIDO) {
+                    logger.warn("Resume token expirado, reiniciando change stream e executando verificação completa");
+                    removerResumeToken();
+                    executarFluxo("resume-token-expirado");
+                } else if (ativo) {
+                    logger.error("Erro no change stream da load_data", e);
+                    aguardarReconexao();
+                }
+            } catch (Exception e) {
+                if (ativo) {
+                    logger.error("Erro no change stream da load_data", e);
+                    aguardarReconexao();
+                }
+            } finally {
+                cursorAtual = null;
+            }
+        }
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> abrirCursor(BsonDocument resumeToken) {
+        // Apenas inserções e atualizações cujo documento resultante está com status 'pronto'
+        List<Bson> pipeline = Collections.singletonList(Aggregates.match(Filters.and(
+                Filters.in("operationType", Arrays.asList("insert", "update", "replace")),
+                Filters.eq("fullDocument.status", "pronto"))));
+
+        ChangeStreamIterable<Document> watch = controlMongoTemplate.getCollection(collectionLoadData)
+                .watch(pipeline)
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            watch = watch.resumeAfter(resumeToken);
+        }
+        return watch.cursor();
+    }
+
+    private void executarFluxo(String origem) {
+        if (!execucaoLock.tryLock()) {
+            // O gatilho não se perde: a execução em andamento roda mais uma vez ao terminar
+            logger.debug("Fluxo já em execução neste nó, gatilho '{}' enfileirado", origem);
+            execucaoPendente = true;
+            return;
+        }
+        try {
+            do {
+                execucaoPendente = false;
+                logger.debug("Fluxo principal disparado por: {}", origem);
+                ultimaExecucao = Instant.now();
+                fluxoPrincipalService.executarFluxoPrincipal();
+            } while (execucaoPendente && ativo);
+        } finally {
+            execucaoLock.unlock();
+        }
+    }
+
+    private BsonDocument carregarResumeToken() {
+        Document controle = controlMongoTemplate.getCollection(collectionWatermarks)
+                .find(new Document("_id", ID_RESUME_TOKEN))
+                .first();
+        if (controle == null || controle.get("resume_token") == null) {
+            return null;
+        }
+        return controle.get("resume_token", Document.class).toBsonDocument();
+    }
+
+    private void salvarResumeToken(BsonDocument resumeToken) {
+        controlMongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(ID_RESUME_TOKEN)),
+                new Update()
+                    .set("resume_token", Document.parse(resumeToken.toJson()))
+                    .set("data_atualizacao", LocalDateTime.now()),
+                collectionWatermarks);
+    }
+
+    private void removerResumeToken() {
+        controlMongoTemplate.remove(new Query(Criteria.where("_id").is(ID_RESUME_TOKEN)), collectionWatermarks);
+    }
+
+    private void aguardarReconexao() {
+        try {
+            Thread.sleep(Duration.ofSeconds(atrasoReconexaoSegundos).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ativo = false;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessLog;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gravação assíncrona de ProcessLog: os logs entram em uma fila limitada em memória, atualizações do
+ * mesmo log são agrupadas e a fila é gravada com bulk write não ordenado por tamanho de lote ou por
+ * intervalo. A thread do fluxo apenas enfileira; a descarga completa ocorre nas transições de etapa
+ * e no desligamento da aplicação. Com a fila cheia a thread do fluxo aguarda a descarga: nenhum log
+ * (nem a contagem dos contadores materializados) é descartado.
+ */
+@Service
+public class GravacaoLogsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GravacaoLogsService.class);
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Autowired
+    private ContadoresLogService contadoresLogService;
+
+    @Autowired
+    private ProgressoFluxoService progressoFluxoService;
+
+    @Autowired
+    private ArmazenamentoLogsService armazenamentoLogsService;
+
+    @Value("${app.logs.writer.queue-capacity:10000}")
+    private int capacidadeFila;
+
+    @Value("${app.logs.writer.batch-size:500}")
+    private int tamanhoLote;
+
+    @Value("${app.logs.writer.flush-interval-ms:500}")
+    private long intervaloDescargaMs;
+
+    @Value("${app.logs.writer.flush-timeout-seconds:30}")
+    private long timeoutDescargaSegundos;
+
+    private final Object trava = new Object();
+
+    // Logs pendentes por _id, na ordem da primeira gravação; uma nova versão substitui a anterior
+    private final Map<String, Pendente> pendentes = new LinkedHashMap<>();
+
+    private final AtomicBoolean loteAgendado = new AtomicBoolean();
+
+    // Thread única: as descargas nunca se sobrepõem e a ordem das versões de um log é preservada
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gravacao-logs");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void iniciar() {
+        executor.scheduleWithFixedDelay(this::descarregarPendentes,
+                intervaloDescargaMs, intervaloDescargaMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Enfileira a versão atual do log sem aguardar o banco. O _id é atribuído na primeira gravação
+     * para que as atualizações seguintes substituam o mesmo documento.
+     * Em collection time-series só há inserções: o início e o fim da etapa são medições separadas, para que
+     * uma etapa interrompida (queda ou kill) deixe o início gravado; versões intermediárias não são gravadas.
+     */
+    public void registrar(ProcessLog log) {
+        boolean serieTemporal = armazenamentoLogsService.isSerieTemporal();
+        // Início já gravado sem fim ainda, ou fim já gravado (o log recebe o _id na inserção do fim)
+        if (serieTemporal && (log.getDataFim() == null ? log.getStatusGravado() != null : log.getId() != null)) {
+            progressoFluxoService.registrarEtapa(log);
+            return;
+        }
+        boolean inicioSerie = serieTemporal && log.getDataFim() == null;
+        if (log.getId() == null && !inicioSerie) {
+            log.setId(new ObjectId().toHexString());
+        }
+        Document documento = new Document();
+        controlMongoTemplate.getConverter().write(log, documento);
+        String id = log.getId();
+        if (inicioSerie) {
+            ObjectId idInicio = new ObjectId();
+            documento.put("_id", idInicio);
+            id = idInicio.toHexString();
+        }
+        // Na time-series cada medição é um documento novo nos contadores, sem transição de status
+        String statusAnterior = serieTemporal ? null : log.getStatusGravado();
+
+        boolean loteCompleto;
+        synchronized (trava) {
+            aguardarEspaco(id, log);
+            Pendente pendente = pendentes.get(id);
+            if (pendente != null) {
+                pendente.documento = documento;
+                pendente.status = log.getStatus();
+            } else {
+                pendentes.put(id, new Pendente(documento, log.getEtapa(), statusAnterior, log.getStatus()));
+            }
+            log.setStatusGravado(log.getStatus());
+            loteCompleto = pendentes.size() >= tamanhoLote;
+        }
+
+        progressoFluxoService.registrarEtapa(log);
+        if (loteCompleto) {
+            agendarDescarga();
+        }
+    }
+
+    /**
+     * Back-pressure: com a fila cheia, uma versão de log novo aguarda a próxima descarga liberar espaço.
+     * No desligamento ou com a thread interrompida (cancelamento) a capacidade é excedida em vez de
+     * perder o log. Chamado com a trava.
+     */
+    private void aguardarEspaco(String id, ProcessLog log) {
+        boolean avisado = false;
+        while (!pendentes.containsKey(id) && pendentes.size() >= capacidadeFila && !executor.isShutdown()) {
+            if (!avisado) {
+                logger.warn("Fila de gravação de logs cheia ({}), aguardando descarga - Processo ID: {} | Etapa: {}",
+                        capacidadeFila, log.getProcessoId(), log.getEtapa());
+                avisado = true;
+            }
+            agendarDescarga();
+            try {
+                trava.wait(intervaloDescargaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void agendarDescarga() {
+        if (!executor.isShutdown() && loteAgendado.compareAndSet(false, true)) {
+            executor.execute(this::descarregarPendentes);
+        }
+    }
+
+    /**
+     * Descarga completa da fila, usada nas transições de etapa para que as leituras seguintes
+     * (procedimentos da load_data, consultas de logs) vejam os logs da etapa encerrada
+     */
+    public void descarregar() {
+        try {
+            executor.submit(this::descarregarPendentes).get(timeoutDescargaSegundos, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Descarga dos logs não concluída: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Grava todos os pendentes com um bulk write não ordenado. Versões que falharem voltam para a
+     * fila, a menos que uma versão mais nova do mesmo log já esteja aguardando.
+     */
+    private void descarregarPendentes() {
+        List<Pendente> lote;
+        synchronized (trava) {
+            loteAgendado.set(false);
+            if (pendentes.isEmpty()) {
+                return;
+            }
+            lote = new ArrayList<>(pendentes.values());
+            pendentes.clear();
+            trava.notifyAll();
+        }
+
+        boolean serieTemporal = armazenamentoLogsService.isSerieTemporal();
+        List<WriteModel<Document>> operacoes = new ArrayList<>(lote.size());
+        for (Pendente pendente : lote) {
+            operacoes.add(serieTemporal
+                    ? new InsertOneModel<>(pendente.documento)
+                    : new ReplaceOneModel<>(new Document("_id", pendente.documento.get("_id")),
+                            pendente.documento, new ReplaceOptions().upsert(true)));
+        }
+
+        Set<Integer> falhas = new HashSet<>();
+        try {
+            controlMongoTemplate.getCollection(controlMongoTemplate.getCollectionName(ProcessLog.class))
+                    .bulkWrite(operacoes, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError erro : e.getWriteErrors()) {
+                falhas.add(erro.getIndex());
+            }
+            logger.error("Falha na gravação de {} de {} logs", falhas.size(), lote.size(), e);
+        } catch (Exception e) {
+            for (int i = 0; i < lote.size(); i++) {
+                falhas.add(i);
+            }
+            logger.error("Erro na gravação de {} logs, lote devolvido à fila", lote.size(), e);
+        }
+
+        List<ContadoresLogService.Gravacao> gravacoes = new ArrayList<>();
+        for (int i = 0; i < lote.size(); i++) {
+            Pendente pendente = lote.get(i);
+            if (falhas.contains(i)) {
+                devolver(pendente);
+            } else {
+                gravacoes.add(new ContadoresLogService.Gravacao(pendente.etapa, pendente.statusAnterior, pendente.status));
+            }
+        }
+
+        if (!gravacoes.isEmpty()) {
+            try {
+                contadoresLogService.registrarGravacoes(gravacoes);
+            } catch (Exception e) {
+                logger.error("Erro ao atualizar contadores de {} logs gravados", gravacoes.size(), e);
+            }
+        }
+    }
+
+    private void devolver(Pendente pendente) {
+        String id = String.valueOf(pendente.documento.get("_id"));
+        synchronized (trava) {
+            Pendente maisNovo = pendentes.get(id);
+            if (maisNovo != null) {
+                // A versão que falhou nunca foi gravada: a transição contabilizada parte do status anterior a ela
+                maisNovo.statusAnterior = pendente.statusAnterior;
+            } else {
+                // Mesmo acima da capacidade: a versão volta para a próxima tentativa em vez de ser perdida
+                pendentes.put(id, pendente);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutDescargaSegundos, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Descarga final na thread de desligamento
+        descarregarPendentes();
+    }
+
+    private static class Pendente {
+
+        private Document documento;
+        private final String etapa;
+        private String statusAnterior;
+        private String status;
+
+        Pendente(Document documento, String etapa, String statusAnterior, String status) {
+            this.documento = documento;
+            this.etapa = etapa;
+            this.statusAnterior = statusAnterior;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.JobFluxo;
+import com.example.atlasdfmongodb.model.ProcessControl;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Execução assíncrona do fluxo em um executor dedicado, com consulta de estado e cancelamento.
+ * As agregações do fluxo levam o processoId como comment, o que permite encerrá-las no servidor com killOp.
+ */
+@Service
+public class JobFluxoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobFluxoService.class);
+
+    @Autowired
+    @Qualifier("primaryMongoTemplate")
+    private MongoTemplate primaryMongoTemplate;
+
+    @Autowired
+    private LeaseProcessoService leaseProcessoService;
+
+    @Value("${app.jobs.history-size:100}")
+    private int tamanhoHistorico;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fluxo-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Jobs submetidos neste nó, limitados aos mais recentes
+    private final Map<String, JobFluxo> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JobFluxo> maisAntigo) {
+            return size() > tamanhoHistorico && maisAntigo.getValue().isFinalizado();
+        }
+    });
+
+    private final Map<String, Future<?>> execucoes = new ConcurrentHashMap<>();
+
+    // Processos com cancelamento solicitado; inclui as datas do backlog (processoId_yyyyMMdd)
+    private final Set<String> cancelados = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Submete a execução ao executor dedicado e retorna imediatamente
+     */
+    public JobFluxo submeter(String processoId, boolean retomada, Supplier<ProcessControl.StatusProcesso> execucao) {
+        JobFluxo job = new JobFluxo(processoId, retomada);
+        jobs.put(processoId, job);
+
+        execucoes.put(processoId, executor.submit(() -> {
+            job.iniciar();
+            try {
+                job.finalizar(execucao.get());
+            } catch (Exception e) {
+                logger.error("Erro não tratado no job do fluxo - Processo ID: {}", processoId, e);
+                job.finalizar(ProcessControl.StatusProcesso.ERRO);
+            } finally {
+                execucoes.remove(processoId);
+            }
+        }));
+        logger.info("Job do fluxo submetido - Processo ID: {}", processoId);
+        return job;
+    }
+
+    /**
+     * Job submetido neste nó
+     */
+    public Optional<JobFluxo> obter(String processoId) {
+        return Optional.ofNullable(jobs.get(processoId));
+    }
+
+    /**
+     * Solicita o cancelamento do processo em execução neste nó: marca o processo, interrompe a
+     * thread do job e encerra no servidor as operações marcadas com o processoId.
+     * Retorna false se o processo não está em execução neste nó.
+     */
+    public boolean cancelar(String processoId) {
+        Future<?> execucao = execucoes.get(processoId);
+        if (execucao == null && !leaseProcessoService.isLeaseAtivo(processoId)) {
+            return false;
+        }
+
+        logger.warn("Cancelamento solicitado - Processo ID: {}", processoId);
+        cancelados.add(processoId);
+        encerrarOperacoes(processoId);
+
+        // Um job ainda na fila não é descartado: ele inicia, encontra a marca e libera o lease como CANCELADO
+        JobFluxo job = jobs.get(processoId);
+        if (execucao != null && job != null && job.getEstado() == JobFluxo.EstadoJob.EM_EXECUCAO) {
+            execucao.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * Lease perdido para outro nó: interrompe a execução local como no cancelamento, mas sem marcar o
+     * processo como cancelado (o status final pertence ao novo dono do lease)
+     */
+    @EventListener
+    public void interromperPorLeasePerdido(LeaseProcessoService.LeasePerdido evento) {
+        String processoId = evento.processoId();
+        encerrarOperacoes(processoId);
+        Future<?> execucao = execucoes.get(processoId);
+        JobFluxo job = jobs.get(processoId);
+        if (execucao != null && job != null && job.getEstado() == JobFluxo.EstadoJob.EM_EXECUCAO) {
+            execucao.cancel(true);
+        }
+    }
+
+    /**
+     * Indica se o cancelamento do processo (ou do processo pai de uma data do backlog) foi solicitado
+     */
+    public boolean isCancelado(String processoId) {
+        return cancelados.stream().anyMatch(processoId::startsWith);
+    }
+
+    /**
+     * Ponto de verificação entre etapas, partições e lotes: cancelamento solicitado ou lease perdido
+     */
+    public void verificarCancelamento(String processoId) {
+        if (isCancelado(processoId)) {
+            throw new CancellationException("Processo cancelado: " + processoId);
+        }
+        if (leaseProcessoService.isLeasePerdido(processoId)) {
+            throw new CancellationException("Lease perdido para outro nó: " + processoId);
+        }
+    }
+
+    /**
+     * Remove a marca de cancelamento após a finalização do processo
+     */
+    public void limparCancelamento(String processoId) {
+        cancelados.remove(processoId);
+    }
+
+    /**
+     * Encerra com killOp as operações do processo ainda em andamento na origem
+     */
+    private void encerrarOperacoes(String processoId) {
+        try {
+            var admin = primaryMongoTemplate.getMongoDatabaseFactory().getMongoDatabase("admin");
+            Document resultado = admin.runCommand(new Document("currentOp", 1)
+                    .append("command.comment", new Document("$regex", "^" + Pattern.quote(processoId))));
+
+            List<Document> operacoes = resultado.getList("inprog", Document.class, Collections.emptyList());
+            for (Document operacao : operacoes) {
+                admin.runCommand(new Document("killOp", 1).append("op", operacao.get("opid")));
+                logger.info("Operação {} encerrada - Processo ID: {}", operacao.get("opid"), processoId);
+            }
+        } catch (Exception e) {
+            // O cancelamento ainda ocorre no próximo ponto de verificação
+            logger.warn("Não foi possível encerrar as operações no servidor - Processo ID: {}: {}",
+                    processoId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+}
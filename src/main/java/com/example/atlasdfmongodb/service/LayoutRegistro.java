@@ -0,0 +1,172 @@
+package com.example.atlasdfmongodb.service;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Layout de registro de largura fixa compilado a partir do descritor: offsets, tipos e regras em
+ * arrays paralelos, consultados por posição no fatiamento do parser e na montagem do pipeline.
+ */
+final class LayoutRegistro {
+
+    /**
+     * Tipo do campo no esquema compacto, sempre reversível para a largura fixa: NUMERICO vira long só
+     * quando toda a largura é de dígitos (os zeros à esquerda são recompostos), INDICADOR vira boolean
+     * só com o domínio declarado no descritor (verdadeiro e falso, ex: ["S", "N"]) e TEXTO perde os
+     * espaços de preenchimento à direita. Valores fora dessas regras permanecem como texto.
+     */
+    enum TipoCampo { NUMERICO, TEXTO, INDICADOR }
+
+    /**
+     * Regra de validação do campo com a quarentena ativa
+     */
+    enum Validacao { NUMERICO, PREENCHIDO }
+
+    /**
+     * Categoria do registro: DETALHE é gravado como dado; CABECALHO e RODAPE são registros de controle
+     * cuja quantidade informada é conferida com o número de detalhes da carga
+     */
+    enum Categoria { DETALHE, CABECALHO, RODAPE }
+
+    final String nome;
+    final int tamanho;
+
+    // Prefixo de DATA que seleciona o layout (null em descritor de layout único)
+    final String tipo;
+    final Categoria categoria;
+    // Campo com a quantidade de detalhes declarada no registro de controle (-1 se não houver)
+    final int campoQuantidade;
+
+    final String[] campos;
+    final String[] compactos;
+    final int[] inicios;
+    final int[] tamanhos;
+    final TipoCampo[] tipos;
+    // Domínio do INDICADOR: valor verdadeiro e valor falso (null sem domínio declarado)
+    final String[][] dominios;
+
+    // Campos da identidade do cartão na ordem do layout (_id da clusterizada e impressão digital)
+    final int[] identidade;
+    // Mesmos campos na ordem da chave do índice único
+    final int[] chaveIndice;
+
+    // Campos validados, na ordem de avaliação, com a regra e o motivo de cada um
+    final int[] validados;
+    final Validacao[] validacoes;
+    final String[] motivos;
+    final List<Set<String>> valoresValidos;
+
+    private LayoutRegistro(Document descritor) {
+        nome = descritor.getString("nome");
+        tamanho = descritor.getInteger("tamanho");
+        List<Document> definicoes = descritor.getList("campos", Document.class);
+        int quantidade = definicoes.size();
+
+        campos = new String[quantidade];
+        compactos = new String[quantidade];
+        inicios = new int[quantidade];
+        tamanhos = new int[quantidade];
+        tipos = new TipoCampo[quantidade];
+        dominios = new String[quantidade][];
+        List<Integer> camposIdentidade = new ArrayList<>();
+        List<Integer> camposValidados = new ArrayList<>();
+
+        for (int i = 0; i < quantidade; i++) {
+            Document campo = definicoes.get(i);
+            campos[i] = campo.getString("nome");
+            compactos[i] = campo.getString("compacto");
+            inicios[i] = campo.getInteger("inicio");
+            tamanhos[i] = campo.getInteger("tamanho");
+            tipos[i] = TipoCampo.valueOf(campo.getString("tipo"));
+            List<String> dominio = campo.getList("dominio", String.class);
+            if (dominio != null) {
+                dominios[i] = dominio.toArray(new String[0]);
+            }
+            if (campo.getInteger("identidade") != null) {
+                camposIdentidade.add(i);
+            }
+            if (campo.getString("validacao") != null) {
+                camposValidados.add(i);
+            }
+        }
+
+        tipo = descritor.getString("tipo");
+        categoria = Categoria.valueOf(descritor.get("categoria", Categoria.DETALHE.name()));
+        campoQuantidade = Arrays.asList(campos).indexOf(descritor.getString("quantidade"));
+
+        identidade = camposIdentidade.stream().mapToInt(Integer::intValue).toArray();
+        chaveIndice = camposIdentidade.stream()
+                .sorted(Comparator.comparingInt(i -> definicoes.get(i).getInteger("identidade")))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        validados = camposValidados.stream().mapToInt(Integer::intValue).toArray();
+        validacoes = new Validacao[validados.length];
+        motivos = new String[validados.length];
+        valoresValidos = new ArrayList<>(validados.length);
+        for (int i = 0; i < validados.length; i++) {
+            Document campo = definicoes.get(validados[i]);
+            validacoes[i] = Validacao.valueOf(campo.getString("validacao"));
+            motivos[i] = campo.getString("motivo");
+            valoresValidos.add(Set.copyOf(campo.getList("valoresValidos", String.class, List.of())));
+        }
+    }
+
+    /**
+     * Compila o descritor, rejeitando campos fora do registro, sobrepostos, com nomes repetidos
+     * ou validados sem motivo, domínio que não seja de INDICADOR com dois valores distintos da largura do
+     * campo, detalhe sem identidade e quantidade de controle inexistente
+     */
+    static LayoutRegistro compilar(Document descritor) {
+        LayoutRegistro layout = new LayoutRegistro(descritor);
+        if (!layout.isControle() && layout.identidade.length == 0) {
+            throw new IllegalArgumentException("Layout " + layout.nome + " sem campos de identidade");
+        }
+        if (descritor.getString("quantidade") != null && layout.campoQuantidade < 0) {
+            throw new IllegalArgumentException("Layout " + layout.nome + " sem o campo de quantidade "
+                    + descritor.getString("quantidade"));
+        }
+
+        Set<String> nomes = new HashSet<>();
+        Integer[] ordem = new Integer[layout.campos.length];
+        for (int i = 0; i < ordem.length; i++) {
+            ordem[i] = i;
+            if (!nomes.add(layout.campos[i]) || !nomes.add("compacto:" + layout.compactos[i])) {
+                throw new IllegalArgumentException("Layout " + layout.nome + " com nome repetido no campo " + layout.campos[i]);
+            }
+            if (layout.inicios[i] < 0 || layout.tamanhos[i] <= 0 || layout.inicios[i] + layout.tamanhos[i] > layout.tamanho) {
+                throw new IllegalArgumentException("Layout " + layout.nome + " com campo fora do registro: " + layout.campos[i]);
+            }
+            String[] dominio = layout.dominios[i];
+            int largura = layout.tamanhos[i];
+            if (dominio != null && (layout.tipos[i] != TipoCampo.INDICADOR || dominio.length != 2 || dominio[0].equals(dominio[1])
+                    || Arrays.stream(dominio).anyMatch(valor -> valor.codePointCount(0, valor.length()) != largura))) {
+                throw new IllegalArgumentException("Layout " + layout.nome + " com domínio inválido no campo " + layout.campos[i]);
+            }
+        }
+        for (int i = 0; i < layout.validados.length; i++) {
+            if (layout.motivos[i] == null) {
+                throw new IllegalArgumentException("Layout " + layout.nome + " sem motivo no campo validado "
+                        + layout.campos[layout.validados[i]]);
+            }
+        }
+        Arrays.sort(ordem, Comparator.comparingInt(i -> layout.inicios[i]));
+        for (int i = 1; i < ordem.length; i++) {
+            if (layout.inicios[ordem[i]] < layout.inicios[ordem[i - 1]] + layout.tamanhos[ordem[i - 1]]) {
+                throw new IllegalArgumentException("Layout " + layout.nome + " com campos sobrepostos: "
+                        + layout.campos[ordem[i - 1]] + " e " + layout.campos[ordem[i]]);
+            }
+        }
+        return layout;
+    }
+
+    boolean isControle() {
+        return categoria != Categoria.DETALHE;
+    }
+}
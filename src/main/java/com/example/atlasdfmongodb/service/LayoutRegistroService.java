@@ -0,0 +1,44 @@
+package com.example.atlasdfmongodb.service;
+
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Carrega o descritor dos layouts do registro DATA (app.layout.location) e o compila uma única vez na
+ * inicialização. Um novo layout é implantado trocando apenas o descritor.
+ */
+@Service
+public class LayoutRegistroService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LayoutRegistroService.class);
+
+    @Value("${app.layout.location:classpath:layouts/flat-122.json}")
+    private Resource descritor;
+
+    private DespachoLayouts despacho;
+
+    @PostConstruct
+    public void compilar() throws IOException {
+        try (InputStream entrada = descritor.getInputStream()) {
+            despacho = DespachoLayouts.compilar(Document.parse(new String(entrada.readAllBytes(), StandardCharsets.UTF_8)));
+        }
+        for (LayoutRegistro layout : despacho.layouts) {
+            logger.info("Layout {} compilado de {}: tipo {} | {} | {} posições, {} campos, {} campos validados",
+                    layout.nome, descritor.getDescription(), layout.tipo, layout.categoria,
+                    layout.tamanho, layout.campos.length, layout.validados.length);
+        }
+    }
+
+    DespachoLayouts getDespacho() {
+        return despacho;
+    }
+}
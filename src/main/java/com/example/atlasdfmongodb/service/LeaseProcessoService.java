@@ -0,0 +1,255 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessControl;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock distribuído de execução baseado em lease no documento de process_control.
+ * O lease é adquirido com findAndModify atômico, renovado por heartbeat enquanto
+ * o processo roda e assumido automaticamente por outro nó quando expira. A expiração usa o relógio do
+ * servidor; o nó que perde o lease interrompe a própria execução.
+ */
+@Service
+public class LeaseProcessoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseProcessoService.class);
+
+    // _id usado quando o documento de controle ainda não existe
+    private static final String ID_CONTROLE = "controle_processo";
+
+    private static final int CODIGO_CHAVE_DUPLICADA = 11000;
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Value("${app.node.id:}")
+    private String idNoConfigurado;
+
+    @Value("${app.lock.lease-seconds:120}")
+    private long duracaoLeaseSegundos;
+
+    private String idNo;
+
+    // Processos cujo lease pertence a este nó e deve ser renovado
+    private final Set<String> leasesAtivos = ConcurrentHashMap.newKeySet();
+
+    // Processos cujo lease foi perdido durante a execução neste nó
+    private final Set<String> leasesPerdidos = ConcurrentHashMap.newKeySet();
+
+    // Última renovação bem-sucedida (System.nanoTime, imune a ajustes do relógio local)
+    private final Map<String, Long> ultimasRenovacoes = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
+    /**
+     * Publicado quando o lease de um processo em execução neste nó é perdido
+     */
+    public record LeasePerdido(String processoId) {
+    }
+
+    @PostConstruct
+    public void inicializar() {
+        idNo = idNoConfigurado == null || idNoConfigurado.isBlank()
+                ? ManagementFactory.getRuntimeMXBean().getName()
+                : idNoConfigurado;
+        logger.info("Identificação do nó para lease de execução: {}", idNo);
+    }
+
+    /**
+     * Identificação deste nó (app.node.id ou pid@hostname)
+     */
+    public String getIdNo() {
+        return idNo;
+    }
+
+    /**
+     * Tenta adquirir o lease para o processo. Retorna false se outro nó detém um lease válido.
+     * A expiração é comparada e calculada com o relógio do servidor ($$NOW), não com o de cada nó,
+     * para que a diferença de relógio entre réplicas não entregue o lease antes da hora.
+     */
+    public boolean adquirir(String processoId) {
+        MongoCollection<Document> collection = controlMongoTemplate.getCollection(
+                controlMongoTemplate.getCollectionName(ProcessControl.class));
+
+        // Mesmo documento de controle retornado por findControlDocument()
+        Document controle = collection.find().first();
+
+        // Livre: sem lease ou com lease expirado (nó anterior caiu sem liberar)
+        Document filtro = new Document("_id", controle != null ? controle.get("_id") : ID_CONTROLE)
+                .append("$expr", new Document("$lte", Arrays.asList(
+                        new Document("$ifNull", Arrays.asList("$lease_expira_em", null)), "$$NOW")));
+
+        Document anterior;
+        try {
+            // Primeiro uso: o upsert cria o documento de controle já com o lease; o _id fixo garante um único vencedor
+            anterior = collection.findOneAndUpdate(filtro, atualizacaoAquisicao(processoId),
+                    new FindOneAndUpdateOptions().upsert(controle == null).returnDocument(ReturnDocument.BEFORE));
+        } catch (MongoServerException e) {
+            if (e.getCode() != CODIGO_CHAVE_DUPLICADA) {
+                throw e;
+            }
+            logger.warn("Lease de execução adquirido por outro nó simultaneamente - Processo ID: {}", processoId);
+            return false;
+        }
+
+        if (anterior == null && controle != null) {
+            logger.warn("Lease de execução em uso pelo processo {} (nó {}) - Processo ID: {}",
+                    controle.get("processo_id"), controle.get("lease_dono"), processoId);
+            return false;
+        }
+        if (anterior != null && ProcessControl.StatusProcesso.EM_EXECUCAO.name().equals(anterior.getString("status"))) {
+            logger.warn("Lease do processo {} (nó {}) expirado, assumindo execução - Processo ID: {}",
+                    anterior.get("processo_id"), anterior.get("lease_dono"), processoId);
+        }
+
+        leasesPerdidos.remove(processoId);
+        ultimasRenovacoes.put(processoId, System.nanoTime());
+        leasesAtivos.add(processoId);
+        logger.info("Lease de execução adquirido pelo nó {} - Processo ID: {}", idNo, processoId);
+        return true;
+    }
+
+    /**
+     * Libera o lease gravando o status final do processo
+     */
+    public void liberar(String processoId, ProcessControl.StatusProcesso status, String erroDetalhes) {
+        leasesAtivos.remove(processoId);
+        ultimasRenovacoes.remove(processoId);
+
+        Update update = new Update()
+                .set("status", status)
+                .set("data_atualizacao", LocalDateTime.now())
+                .set("erro_detalhes", status == ProcessControl.StatusProcesso.ERRO ? erroDetalhes : null)
+                .unset("lease_dono")
+                .unset("lease_expira_em");
+
+        long modificados = controlMongoTemplate.updateFirst(
+                new Query(Criteria.where("processo_id").is(processoId).and("lease_dono").is(idNo)),
+                update, ProcessControl.class).getModifiedCount();
+        if (modificados == 0) {
+            logger.warn("Lease não pertencia mais a este nó ao finalizar - Processo ID: {}", processoId);
+        }
+    }
+
+    /**
+     * Reset manual do controle para PRONTO em uma única atualização condicional. Sem forçar, só ocorre com o
+     * lease livre ou expirado no relógio do servidor; forçado, descarta o lease vigente e o dono atual o perde
+     * no próximo heartbeat. Retorna o documento anterior, ou null se o lease está em vigor (ou não há controle).
+     */
+    public Document resetar(boolean forcar) {
+        Document filtro = forcar ? new Document() : new Document("$expr", new Document("$lte", Arrays.asList(
+                new Document("$ifNull", Arrays.asList("$lease_expira_em", null)), "$$NOW")));
+        return controlMongoTemplate.getCollection(controlMongoTemplate.getCollectionName(ProcessControl.class))
+                .findOneAndUpdate(filtro, Arrays.asList(
+                                new Document("$set", new Document()
+                                        .append("status", ProcessControl.StatusProcesso.PRONTO.name())
+                                        .append("data_atualizacao", "$$NOW")),
+                                new Document("$unset", Arrays.asList("erro_detalhes", "lease_dono", "lease_expira_em"))),
+                        new FindOneAndUpdateOptions().returnDocument(ReturnDocument.BEFORE));
+    }
+
+    /**
+     * Indica se o lease do processo ainda pertence a este nó
+     */
+    public boolean isLeaseAtivo(String processoId) {
+        return leasesAtivos.contains(processoId);
+    }
+
+    /**
+     * Indica se o lease do processo (ou do processo pai de uma data do backlog) foi perdido durante a
+     * execução: o processo deve parar no próximo ponto de verificação sem gravar o status final
+     */
+    public boolean isLeasePerdido(String processoId) {
+        return leasesPerdidos.stream().anyMatch(processoId::startsWith);
+    }
+
+    /**
+     * Remove a marca de lease perdido após o encerramento do processo
+     */
+    public void descartar(String processoId) {
+        leasesPerdidos.remove(processoId);
+        ultimasRenovacoes.remove(processoId);
+    }
+
+    /**
+     * Heartbeat: renova os leases detidos por este nó com a expiração calculada no servidor.
+     * Lease assumido por outro nó, ou sem renovação por mais que a sua duração, interrompe a execução
+     * local (LeasePerdido), evitando duas réplicas processando a mesma data.
+     */
+    @Scheduled(fixedDelayString = "${app.lock.heartbeat-seconds:30}", timeUnit = TimeUnit.SECONDS)
+    public void renovarLeases() {
+        for (String processoId : leasesAtivos) {
+            try {
+                long modificados = controlMongoTemplate.getCollection(controlMongoTemplate.getCollectionName(ProcessControl.class))
+                        .updateOne(new Document("processo_id", processoId).append("lease_dono", idNo),
+                                Collections.singletonList(new Document("$set", new Document("lease_expira_em", expiracao()))))
+                        .getModifiedCount();
+                if (modificados == 0) {
+                    perder(processoId, "lease assumido por outro nó");
+                } else {
+                    ultimasRenovacoes.put(processoId, System.nanoTime());
+                }
+            } catch (Exception e) {
+                logger.error("Erro ao renovar lease - Processo ID: {}", processoId, e);
+                Long ultimaRenovacao = ultimasRenovacoes.get(processoId);
+                if (ultimaRenovacao != null
+                        && System.nanoTime() - ultimaRenovacao >= TimeUnit.SECONDS.toNanos(duracaoLeaseSegundos)) {
+                    // O lease pode já ter expirado no servidor e sido assumido por outro nó
+                    perder(processoId, "sem renovação por " + duracaoLeaseSegundos + " segundos");
+                }
+            }
+        }
+    }
+
+    private void perder(String processoId, String motivo) {
+        leasesAtivos.remove(processoId);
+        leasesPerdidos.add(processoId);
+        logger.error("Lease perdido ({}), interrompendo a execução local - Processo ID: {}", motivo, processoId);
+        eventos.publishEvent(new LeasePerdido(processoId));
+    }
+
+    // Instante de expiração calculado no servidor
+    private Document expiracao() {
+        return new Document("$add", Arrays.asList("$$NOW", TimeUnit.SECONDS.toMillis(duracaoLeaseSegundos)));
+    }
+
+    private List<Document> atualizacaoAquisicao(String processoId) {
+        return Arrays.asList(
+                new Document("$set", new Document()
+                        .append("processo_id", new Document("$literal", processoId))
+                        .append("status", ProcessControl.StatusProcesso.EM_EXECUCAO.name())
+                        .append("data_atualizacao", "$$NOW")
+                        .append("lease_dono", new Document("$literal", idNo))
+                        .append("lease_expira_em", expiracao())),
+                new Document("$unset", "erro_detalhes"));
+    }
+}
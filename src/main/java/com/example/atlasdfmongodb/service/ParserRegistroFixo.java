@@ -0,0 +1,234 @@
+package com.example.atlasdfmongodb.service;
+
+import org.bson.Document;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Fatiamento do registro DATA de largura fixa no lado do cliente, conforme o plano compilado do layout.
+ * Produz o mesmo documento que o estágio de projeção do pipeline de agregação: os offsets do layout são
+ * contados em code points, como no $substrCP e no $strLenCP, inclusive com caracteres fora do BMP.
+ */
+public final class ParserRegistroFixo {
+
+    // Motivo de invalidade comum a todos os layouts; os demais vêm do descritor
+    public static final String MOTIVO_TAMANHO_INVALIDO = "TAMANHO_INVALIDO";
+
+    // Prefixo de DATA que não corresponde a nenhum layout do descritor
+    public static final String MOTIVO_TIPO_DESCONHECIDO = "TIPO_REGISTRO_DESCONHECIDO";
+
+    private ParserRegistroFixo() {
+    }
+
+    /**
+     * Converte o conteúdo de DATA no documento de destino
+     */
+    static Document converter(LayoutRegistro layout, String data, Date hInclReg) {
+        Document documento = new Document();
+
+        if (isTamanhoValido(layout, data)) {
+            // Offsets pré-calculados: a única alocação por campo é o próprio valor (String) do documento
+            Document dados = new Document();
+            for (int i = 0; i < layout.campos.length; i++) {
+                dados.append(layout.campos[i], fatia(layout, data, i));
+            }
+            documento.append("validade", "valido").append("dados", dados);
+        } else {
+            documento.append("validade", "invalido").append("dados", new Document("original", data));
+        }
+
+        return documento.append("hInclReg", hInclReg);
+    }
+
+    /**
+     * Converte o conteúdo de DATA no esquema compacto: {v, d, h} com campos tipados e nomes curtos
+     */
+    static Document converterCompacto(LayoutRegistro layout, String data, Date hInclReg) {
+        Document documento = new Document();
+
+        if (isTamanhoValido(layout, data)) {
+            Document dados = new Document();
+            for (int i = 0; i < layout.campos.length; i++) {
+                dados.append(layout.compactos[i], valorCompacto(layout, data, i));
+            }
+            documento.append("v", true).append("d", dados);
+        } else {
+            documento.append("v", false).append("d", new Document("o", data));
+        }
+
+        return documento.append("h", hInclReg);
+    }
+
+    /**
+     * Registro inválido com o motivo, no esquema padrão ({original, motivo}) ou compacto ({o, m});
+     * sem motivo (quarentena desligada) apenas o original
+     */
+    static Document converterInvalido(String data, Date hInclReg, String motivo, boolean compacto) {
+        Document dados = new Document(compacto ? "o" : "original", data);
+        if (motivo != null) {
+            dados.append(compacto ? "m" : "motivo", motivo);
+        }
+        if (compacto) {
+            return new Document("v", false).append("d", dados).append("h", hInclReg);
+        }
+        return new Document("validade", "invalido").append("dados", dados).append("hInclReg", hInclReg);
+    }
+
+    /**
+     * Registro de controle (cabeçalho ou rodapé) de tamanho válido: {controle, dados, hInclReg} ou,
+     * no esquema compacto, {c, d, h}, sem campo de validade
+     */
+    static Document converterControle(LayoutRegistro layout, String data, Date hInclReg, boolean compacto) {
+        Document dados = new Document();
+        for (int i = 0; i < layout.campos.length; i++) {
+            if (compacto) {
+                dados.append(layout.compactos[i], valorCompacto(layout, data, i));
+            } else {
+                dados.append(layout.campos[i], fatia(layout, data, i));
+            }
+        }
+        if (compacto) {
+            return new Document("c", layout.nome).append("d", dados).append("h", hInclReg);
+        }
+        return new Document("controle", layout.nome).append("dados", dados).append("hInclReg", hInclReg);
+    }
+
+    /**
+     * Primeiro motivo de invalidade do registro, ou null se válido: tamanho e, na ordem do layout,
+     * as regras dos campos validados (numérico; preenchido e entre os valores válidos, quando informados)
+     */
+    static String motivoInvalidade(LayoutRegistro layout, String data) {
+        if (!isTamanhoValido(layout, data)) {
+            return MOTIVO_TAMANHO_INVALIDO;
+        }
+        for (int i = 0; i < layout.validados.length; i++) {
+            int campo = layout.validados[i];
+            if (layout.validacoes[i] == LayoutRegistro.Validacao.NUMERICO) {
+                for (int j = inicio(layout, data, campo); j < fim(layout, data, campo); j++) {
+                    char c = data.charAt(j);
+                    if (c < '0' || c > '9') {
+                        return layout.motivos[i];
+                    }
+                }
+            } else {
+                String valor = fatia(layout, data, campo);
+                Set<String> valores = layout.valoresValidos.get(i);
+                if (valor.isBlank() || (!valores.isEmpty() && !valores.contains(valor))) {
+                    return layout.motivos[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Impressão digital de 64 bits da identidade do cartão de um registro válido:
+     * FNV-1a sobre os campos de identidade seguido do finalizador do MurmurHash3
+     */
+    static long impressaoDigital(LayoutRegistro layout, String data) {
+        long hash = 0xcbf29ce484222325L;
+        for (int campo : layout.identidade) {
+            for (int i = inicio(layout, data, campo); i < fim(layout, data, campo); i++) {
+                hash ^= data.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Texto da identidade do cartão de um registro válido, usado como chave exata
+     */
+    static String identidade(LayoutRegistro layout, String data) {
+        StringBuilder texto = new StringBuilder();
+        for (int campo : layout.identidade) {
+            texto.append(data, inicio(layout, data, campo), fim(layout, data, campo));
+        }
+        return texto.toString();
+    }
+
+    private static String fatia(LayoutRegistro layout, String data, int campo) {
+        return data.substring(inicio(layout, data, campo), fim(layout, data, campo));
+    }
+
+    // Posição em chars do início do campo: sem pares surrogate (comprimento em chars igual ao tamanho em
+    // code points) é o próprio offset do layout; com eles o offset em code points é convertido
+    private static int inicio(LayoutRegistro layout, String data, int campo) {
+        return data.length() == layout.tamanho ? layout.inicios[campo] : data.offsetByCodePoints(0, layout.inicios[campo]);
+    }
+
+    private static int fim(LayoutRegistro layout, String data, int campo) {
+        int fim = layout.inicios[campo] + layout.tamanhos[campo];
+        return data.length() == layout.tamanho ? fim : data.offsetByCodePoints(0, fim);
+    }
+
+    /**
+     * Mesmas regras da projeção compacta, lidas direto de DATA: só convertem valores com volta exata à
+     * largura fixa (toda a largura em dígitos; indicador igual a um valor do domínio declarado), sem texto
+     * intermediário; o restante é cortado uma única vez, já sem os espaços à direita
+     */
+    static Object valorCompacto(LayoutRegistro layout, String data, int campo) {
+        int inicio = inicio(layout, data, campo);
+        int fim = fim(layout, data, campo);
+        switch (layout.tipos[campo]) {
+            case NUMERICO:
+                if (isDigitos(data, inicio, fim)) {
+                    return Long.parseLong(data, inicio, fim, 10);
+                }
+                break;
+            case INDICADOR:
+                String[] dominio = layout.dominios[campo];
+                if (dominio != null) {
+                    if (isValor(data, inicio, fim, dominio[0])) {
+                        return Boolean.TRUE;
+                    }
+                    if (isValor(data, inicio, fim, dominio[1])) {
+                        return Boolean.FALSE;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        while (fim > inicio && data.charAt(fim - 1) == ' ') {
+            fim--;
+        }
+        return data.substring(inicio, fim);
+    }
+
+    private static boolean isValor(String data, int inicio, int fim, String valor) {
+        return fim - inicio == valor.length() && data.startsWith(valor, inicio);
+    }
+
+    // Até 18 dígitos cabem em long sem risco de estouro
+    private static boolean isDigitos(String data, int inicio, int fim) {
+        if (fim == inicio || fim - inicio > 18) {
+            return false;
+        }
+        for (int i = inicio; i < fim; i++) {
+            char c = data.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Equivalente a $strLenCP == tamanho do layout, calculado uma única vez por registro
+     */
+    static boolean isTamanhoValido(LayoutRegistro layout, String data) {
+        int tamanho = layout.tamanho;
+        if (data == null || data.length() < tamanho) {
+            return false;
+        }
+        // Sem pares surrogate o comprimento em chars já é o número de code points
+        return data.length() == tamanho
+                ? data.codePointCount(0, tamanho) == tamanho
+                : data.codePointCount(0, data.length()) == tamanho;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessLog;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexModel;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Planejamento da criação dos índices da collection temporária. Todos os índices são enviados em um
+ * único createIndexes (uma só varredura), antes da carga (previa: collection pré-criada e indexada,
+ * cartão repetido falha já na carga) ou depois dela (posterior). No modo auto a estratégia é escolhida
+ * pelo tempo medido de carga + índices por milhão de documentos nas execuções anteriores: como na previa
+ * o custo dos índices é pago durante a carga, as duas estratégias são medidas na mesma base, da recriação
+ * da collection de destino até o fim da construção dos índices. Estratégia sem medição só é experimentada
+ * em produção com app.index.auto-trial; sem ela o auto escolhe entre as já medidas (posterior sem nenhuma).
+ * Como o comando é único, a duração registrada é a do createIndexes, não a de cada índice.
+ */
+@Service
+public class PlanejadorIndicesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanejadorIndicesService.class);
+
+    public enum Estrategia { POSTERIOR, PREVIA }
+
+    private static final String ESTRATEGIA_AUTO = "auto";
+
+    // Peso da medição mais recente na média móvel
+    private static final double PESO_MEDICAO = 0.3;
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Autowired
+    private EsquemaSaidaService esquemaSaidaService;
+
+    @Autowired
+    private GravacaoLogsService gravacaoLogsService;
+
+    @Value("${app.index.strategy:posterior}")
+    private String estrategiaConfigurada;
+
+    @Value("${app.index.auto-trial:false}")
+    private boolean experimentarEstrategias;
+
+    @Value("${mongodb.control.collection.index-stats:index_build_stats}")
+    private String collectionMedicoes;
+
+    private final Map<String, Plano> planos = new ConcurrentHashMap<>();
+
+    /**
+     * Define a estratégia do processo no início da carga
+     */
+    public Estrategia planejar(String processoId) {
+        Estrategia estrategia = escolherEstrategia();
+        planos.put(processoId, new Plano(estrategia));
+        logger.info("Estratégia de índices - Processo ID: {} | {} (configurada: {})",
+                processoId, estrategia, estrategiaConfigurada);
+        return estrategia;
+    }
+
+    /**
+     * Prepara a collection de destino da carga; na estratégia previa os índices são criados nela vazia
+     */
+    public void prepararCollectionDestino(String processoId, String nomeCollection, boolean recriar) {
+        esquemaSaidaService.prepararCollectionDestino(nomeCollection, recriar);
+        Plano plano = planos.get(processoId);
+        if (plano == null) {
+            return;
+        }
+        if (recriar) {
+            plano.iniciarMedicao();
+        }
+        if (plano.estrategia == Estrategia.PREVIA) {
+            construir(processoId, nomeCollection, plano);
+        }
+    }
+
+    /**
+     * Collection recriada pela própria carga ($out), sem passar por prepararCollectionDestino
+     */
+    public void marcarCollectionRecriada(String processoId) {
+        Plano plano = planos.get(processoId);
+        if (plano != null) {
+            plano.iniciarMedicao();
+        }
+    }
+
+    /**
+     * Após a carga: cria os índices pendentes (posterior) ou confirma os já existentes (previa, idempotente),
+     * registra a medição da estratégia e retorna a duração do createIndexes em segundos (0 sem índices)
+     */
+    public double concluirCarga(String processoId, String nomeCollection) {
+        Plano plano = planos.computeIfAbsent(processoId, id -> new Plano(Estrategia.POSTERIOR));
+        construir(processoId, nomeCollection, plano);
+
+        // Só cargas em collection recriada são comparáveis entre si
+        if (plano.inicioMedicao != null) {
+            double segundos = Duration.between(plano.inicioMedicao, LocalDateTime.now()).toMillis() / 1000.0;
+            long documentos = flatMongoTemplate.getCollection(nomeCollection).estimatedDocumentCount();
+            registrarMedicao(plano.estrategia, segundos, plano.duracaoIndices != null ? plano.duracaoIndices : 0.0, documentos);
+        }
+        return plano.duracaoIndices != null ? plano.duracaoIndices : 0.0;
+    }
+
+    /**
+     * Constrói os índices antes do fim da carga, quando ela precisa consultar a collection pela identidade
+     * do cartão (repetições do parser); concluirCarga então apenas os confirma
+     */
+    public void construirIndicesAntecipados(String processoId, String nomeCollection) {
+        Plano plano = planos.computeIfAbsent(processoId, id -> new Plano(Estrategia.POSTERIOR));
+        construir(processoId, nomeCollection, plano);
+    }
+
+    public Estrategia obterEstrategia(String processoId) {
+        Plano plano = planos.get(processoId);
+        return plano != null ? plano.estrategia : Estrategia.POSTERIOR;
+    }
+
+    /**
+     * Remove o plano ao final do processamento da data
+     */
+    public void descartar(String processoId) {
+        planos.remove(processoId);
+    }
+
+    /**
+     * Um único createIndexes com todos os índices e um único ProcessLog com a duração do comando,
+     * que não se repete por índice na soma dos tempos da load_data
+     */
+    private void construir(String processoId, String nomeCollection, Plano plano) {
+        List<IndexModel> modelos = esquemaSaidaService.modelosIndices();
+        if (modelos.isEmpty()) {
+            return;
+        }
+        MongoCollection<Document> collection = flatMongoTemplate.getCollection(nomeCollection);
+
+        LocalDateTime inicio = LocalDateTime.now();
+        List<String> nomes = collection.createIndexes(modelos);
+        LocalDateTime fim = LocalDateTime.now();
+
+        // Índices já existentes (previa confirmada após a carga) não geram nova medição
+        if (plano.duracaoIndices != null) {
+            return;
+        }
+        ProcessLog log = new ProcessLog(processoId, String.format(
+                "Índices %s construídos na collection %s (estratégia %s, um createIndexes com %d índices)",
+                nomes, nomeCollection, plano.estrategia, nomes.size()), "CONSTRUCAO_INDICES");
+        log.setIndices(nomes);
+        log.setDataInicio(inicio);
+        log.finalizarEtapa();
+        log.setDataFim(fim);
+        gravacaoLogsService.registrar(log);
+        plano.duracaoIndices = log.getTempoTotalSegundos();
+    }
+
+    /**
+     * auto: a de menor tempo médio por milhão de documentos entre as medidas; com app.index.auto-trial a
+     * estratégia ainda sem medição é experimentada primeiro
+     */
+    private Estrategia escolherEstrategia() {
+        if (!ESTRATEGIA_AUTO.equalsIgnoreCase(estrategiaConfigurada)) {
+            return Estrategia.PREVIA.name().equalsIgnoreCase(estrategiaConfigurada) ? Estrategia.PREVIA : Estrategia.POSTERIOR;
+        }
+
+        Estrategia melhor = null;
+        double menorTempo = Double.MAX_VALUE;
+        for (Estrategia estrategia : Estrategia.values()) {
+            Document medicao = controlMongoTemplate.getCollection(collectionMedicoes)
+                    .find(new Document("_id", estrategia.name()))
+                    .first();
+            if (medicao == null) {
+                if (experimentarEstrategias) {
+                    return estrategia;
+                }
+                continue;
+            }
+            double tempo = ((Number) medicao.get("segundos_por_milhao")).doubleValue();
+            if (tempo < menorTempo) {
+                menorTempo = tempo;
+                melhor = estrategia;
+            }
+        }
+        return melhor != null ? melhor : Estrategia.POSTERIOR;
+    }
+
+    private void registrarMedicao(Estrategia estrategia, double segundos, double segundosIndices, long documentos) {
+        if (documentos <= 0) {
+            return;
+        }
+        double segundosPorMilhao = segundos * 1_000_000.0 / documentos;
+        try {
+            Document anterior = controlMongoTemplate.getCollection(collectionMedicoes)
+                    .find(new Document("_id", estrategia.name()))
+                    .first();
+            double media = anterior == null ? segundosPorMilhao
+                    : PESO_MEDICAO * segundosPorMilhao
+                      + (1 - PESO_MEDICAO) * ((Number) anterior.get("segundos_por_milhao")).doubleValue();
+
+            controlMongoTemplate.upsert(new Query(Criteria.where("_id").is(estrategia.name())),
+                    new Update()
+                        .set("segundos_por_milhao", media)
+                        .set("ultima_duracao_segundos", segundos)
+                        .set("ultima_duracao_indices_segundos", segundosIndices)
+                        .set("ultimos_documentos", documentos)
+                        .set("data_atualizacao", LocalDateTime.now())
+                        .inc("execucoes", 1),
+                    collectionMedicoes);
+            logger.info("Medição de carga + índices registrada - Estratégia: {} | {}s ({}s no createIndexes) para {} documentos | Média: {} s/milhão",
+                    estrategia, segundos, segundosIndices, documentos, Math.round(media * 100.0) / 100.0);
+        } catch (Exception e) {
+            logger.warn("Não foi possível registrar a medição da estratégia {}: {}", estrategia, e.getMessage());
+        }
+    }
+
+    private static class Plano {
+
+        private final Estrategia estrategia;
+        // Recriação da collection de destino: início da medição de carga + índices (null sem recriação)
+        private volatile LocalDateTime inicioMedicao;
+        private volatile Double duracaoIndices;
+
+        Plano(Estrategia estrategia) {
+            this.estrategia = estrategia;
+        }
+
+        void iniciarMedicao() {
+            if (inicioMedicao == null) {
+                inicioMedicao = LocalDateTime.now();
+            }
+        }
+    }
+}
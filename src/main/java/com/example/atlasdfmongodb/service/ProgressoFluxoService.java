@@ -0,0 +1,209 @@
+package com.example.atlasdfmongodb.service;
+
+import com.example.atlasdfmongodb.model.ProcessControl;
+import com.example.atlasdfmongodb.model.ProcessLog;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progresso em memória dos processos ativos neste nó, transmitido por Server-Sent Events.
+ * Todos os painéis que acompanham o mesmo processo compartilham uma única fonte de eventos.
+ */
+@Service
+public class ProgressoFluxoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressoFluxoService.class);
+
+    @Value("${app.progress.sse-timeout-minutes:120}")
+    private long timeoutSseMinutos;
+
+    private final Map<String, FonteProgresso> fontes = new ConcurrentHashMap<>();
+
+    // Envio dos eventos fora da thread do fluxo: um cliente lento não atrasa a carga
+    private final ExecutorService despachante = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progresso-sse");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Abre a fonte de eventos do processo
+     */
+    public void iniciar(String processoId) {
+        fontes.put(processoId, new FonteProgresso(processoId));
+    }
+
+    /**
+     * Publica o evento final e encerra as conexões dos assinantes
+     */
+    public void finalizar(String processoId, ProcessControl.StatusProcesso status) {
+        FonteProgresso fonte = fontes.remove(processoId);
+        if (fonte == null) {
+            return;
+        }
+        fonte.status = status.name();
+        fonte.finalizado = true;
+        publicar(fonte, "fim");
+    }
+
+    /**
+     * Transição de etapa a partir do ProcessLog gravado
+     */
+    public void registrarEtapa(ProcessLog log) {
+        FonteProgresso fonte = localizar(log.getProcessoId());
+        if (fonte == null) {
+            return;
+        }
+        fonte.etapa = log.getEtapa();
+        fonte.statusEtapa = log.getStatus();
+        fonte.mensagem = log.getMensagem();
+        publicar(fonte, "etapa");
+    }
+
+    /**
+     * Soma ao total de documentos esperados: partições calculadas ou estimativa da collection de origem
+     */
+    public void adicionarDocumentosEsperados(String processoId, long documentos) {
+        FonteProgresso fonte = localizar(processoId);
+        if (fonte != null) {
+            fonte.documentosEsperados.addAndGet(documentos);
+            publicar(fonte, "progresso");
+        }
+    }
+
+    /**
+     * Soma documentos gravados (partições concluídas, lotes do parser ou total da Etapa 3 no modo out)
+     */
+    public void adicionarDocumentosProcessados(String processoId, long documentos) {
+        FonteProgresso fonte = localizar(processoId);
+        if (fonte != null) {
+            fonte.documentosProcessados.addAndGet(documentos);
+            publicar(fonte, "progresso");
+        }
+    }
+
+    /**
+     * Assina o progresso do processo; o estado atual é enviado imediatamente.
+     * Retorna null se o processo não está ativo neste nó.
+     */
+    public SseEmitter assinar(String processoId) {
+        FonteProgresso fonte = fontes.get(processoId);
+        if (fonte == null) {
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(Duration.ofMinutes(timeoutSseMinutos).toMillis());
+        emitter.onCompletion(() -> fonte.assinantes.remove(emitter));
+        emitter.onTimeout(() -> fonte.assinantes.remove(emitter));
+        emitter.onError(erro -> fonte.assinantes.remove(emitter));
+        fonte.assinantes.add(emitter);
+
+        despachante.execute(() -> enviar(fonte, emitter, "progresso", fonte.snapshot()));
+        return emitter;
+    }
+
+    private void publicar(FonteProgresso fonte, String evento) {
+        if (fonte.assinantes.isEmpty()) {
+            return;
+        }
+        Map<String, Object> snapshot = fonte.snapshot();
+        despachante.execute(() -> {
+            for (SseEmitter emitter : fonte.assinantes) {
+                enviar(fonte, emitter, evento, snapshot);
+                if (fonte.finalizado) {
+                    emitter.complete();
+                }
+            }
+        });
+    }
+
+    private void enviar(FonteProgresso fonte, SseEmitter emitter, String evento, Map<String, Object> snapshot) {
+        try {
+            emitter.send(SseEmitter.event().name(evento).data(snapshot));
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Assinante de progresso desconectado - Processo ID: {}", fonte.processoId);
+            fonte.assinantes.remove(emitter);
+        }
+    }
+
+    /**
+     * Fonte do processo; as datas do backlog (processoId_yyyyMMdd) publicam na fonte do processo pai
+     */
+    private FonteProgresso localizar(String processoId) {
+        if (processoId == null) {
+            return null;
+        }
+        FonteProgresso fonte = fontes.get(processoId);
+        if (fonte != null) {
+            return fonte;
+        }
+        for (FonteProgresso candidata : fontes.values()) {
+            if (processoId.startsWith(candidata.processoId + "_")) {
+                return candidata;
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        despachante.shutdownNow();
+    }
+
+    private static class FonteProgresso {
+
+        private final String processoId;
+        private final LocalDateTime inicio = LocalDateTime.now();
+        private final List<SseEmitter> assinantes = new CopyOnWriteArrayList<>();
+        private final AtomicLong documentosProcessados = new AtomicLong();
+        private final AtomicLong documentosEsperados = new AtomicLong();
+        private volatile String etapa;
+        private volatile String statusEtapa;
+        private volatile String mensagem;
+        private volatile String status = ProcessControl.StatusProcesso.EM_EXECUCAO.name();
+        private volatile boolean finalizado;
+
+        FonteProgresso(String processoId) {
+            this.processoId = processoId;
+        }
+
+        Map<String, Object> snapshot() {
+            long processados = documentosProcessados.get();
+            long esperados = documentosEsperados.get();
+            double segundos = Math.max(1, Duration.between(inicio, LocalDateTime.now()).toMillis()) / 1000.0;
+            double documentosPorSegundo = processados / segundos;
+
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("processoId", processoId);
+            snapshot.put("status", status);
+            snapshot.put("etapa", etapa);
+            snapshot.put("statusEtapa", statusEtapa);
+            snapshot.put("mensagem", mensagem);
+            snapshot.put("documentosProcessados", processados);
+            snapshot.put("documentosEsperados", esperados > 0 ? esperados : null);
+            // Sem documentos processados ainda (ex: carga incremental ou $out em andamento) não há vazão nem ETA
+            snapshot.put("documentosPorSegundo", processados > 0 ? Math.round(documentosPorSegundo * 100.0) / 100.0 : null);
+            snapshot.put("etaSegundos", esperados > processados && documentosPorSegundo > 0
+                    ? Math.round((esperados - processados) / documentosPorSegundo) : null);
+            snapshot.put("inicio", inicio);
+            snapshot.put("atualizacao", LocalDateTime.now());
+            return snapshot;
+        }
+    }
+}
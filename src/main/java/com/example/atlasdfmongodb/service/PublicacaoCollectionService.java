@@ -0,0 +1,147 @@
+package com.example.atlasdfmongodb.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Publicação atômica da collection do dia: a carga, os índices e as estatísticas são feitos em
+ * temp_yyyyMMdd_staging, que só ao final é renomeada com dropTarget sobre o alias estável lido pelos
+ * consumidores. Enquanto a data não for publicada o alias continua servindo a carga anterior, que antes do
+ * rename é arquivada em temp_yyyyMMdd da sua data para permitir o rollback registrado em data_anterior.
+ * Datas mais antigas que a última publicada (backlog) são renomeadas para temp_yyyyMMdd.
+ */
+@Service
+public class PublicacaoCollectionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicacaoCollectionService.class);
+
+    private static final String SUFIXO_STAGING = "_staging";
+
+    private static final String MODO_CARGA_INCREMENTAL = "incremental";
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Value("${app.publish.enabled:false}")
+    private boolean habilitada;
+
+    @Value("${app.publish.alias:temp_atual}")
+    private String alias;
+
+    @Value("${app.load.mode:out}")
+    private String modoCarga;
+
+    @Value("${mongodb.control.collection.publications:collection_publications}")
+    private String collectionPublicacoes;
+
+    /**
+     * A carga incremental acumula na collection do dia entre execuções e por isso grava direto nela
+     */
+    public boolean isAtiva() {
+        return habilitada && !MODO_CARGA_INCREMENTAL.equalsIgnoreCase(modoCarga);
+    }
+
+    /**
+     * Collection em que a carga é construída: staging quando a publicação está ativa
+     */
+    public String nomeCollectionCarga(String nomeCollectionData) {
+        return isAtiva() ? nomeCollectionData + SUFIXO_STAGING : nomeCollectionData;
+    }
+
+    /**
+     * Renomeia a staging sobre o alias (data mais recente) ou sobre temp_yyyyMMdd (data antiga do backlog)
+     * e retorna o nome da collection publicada. Idempotente na retomada: sem staging, a publicação já ocorreu.
+     */
+    public synchronized String publicar(String processoId, String nomeCollectionData, String dataProcessamento) {
+        if (!isAtiva()) {
+            return nomeCollectionData;
+        }
+
+        String staging = nomeCollectionCarga(nomeCollectionData);
+        Document registro = controlMongoTemplate.getCollection(collectionPublicacoes)
+                .find(new Document("_id", alias))
+                .first();
+        String dataPublicada = registro != null ? registro.getString("data") : null;
+        String database = flatMongoTemplate.getDb().getName();
+
+        // Retomada após falha entre o registro da publicação e o arquivamento do alias
+        if (registro != null && registro.getString("arquivar") != null) {
+            arquivarAlias(processoId, database, nomeCollectionArquivo(nomeCollectionData, dataProcessamento,
+                    registro.getString("arquivar")));
+        }
+
+        if (!flatMongoTemplate.collectionExists(staging)) {
+            String destino = dataProcessamento.equals(dataPublicada) ? alias : nomeCollectionData;
+            logger.info("Collection {} já publicada em {} - Processo ID: {}", staging, destino, processoId);
+            return destino;
+        }
+
+        boolean maisRecente = dataPublicada == null || dataProcessamento.compareTo(dataPublicada) >= 0;
+        String destino = maisRecente ? alias : nomeCollectionData;
+
+        if (maisRecente) {
+            // A mesma data republicada substitui a versão anterior; outra data é arquivada para o rollback
+            String arquivar = dataPublicada != null && !dataPublicada.equals(dataProcessamento) ? dataPublicada : null;
+            // Registrado antes do rename: uma retomada após falha entre os passos arquiva e publica no alias de novo
+            controlMongoTemplate.upsert(new Query(Criteria.where("_id").is(alias)),
+                    new Update()
+                        .set("data", dataProcessamento)
+                        .set("data_anterior", dataPublicada)
+                        .set("arquivar", arquivar)
+                        .set("processo_id", processoId)
+                        .set("data_publicacao", LocalDateTime.now()),
+                    collectionPublicacoes);
+            if (arquivar != null) {
+                arquivarAlias(processoId, database, nomeCollectionArquivo(nomeCollectionData, dataProcessamento, arquivar));
+            }
+        }
+
+        flatMongoTemplate.getCollection(staging).renameCollection(
+                new MongoNamespace(database, destino), new RenameCollectionOptions().dropTarget(true));
+
+        logger.info("Collection {} publicada em {} - Processo ID: {} | Data: {} | Última publicada: {}",
+                staging, destino, processoId, dataProcessamento, dataPublicada);
+        return destino;
+    }
+
+    /**
+     * Renomeia a carga servida pelo alias para a collection da sua data e limpa a pendência no registro.
+     * A collection da data é substituída: a versão publicada no alias é a que vale para o rollback.
+     */
+    private void arquivarAlias(String processoId, String database, String collectionArquivo) {
+        if (flatMongoTemplate.collectionExists(alias)) {
+            flatMongoTemplate.getCollection(alias).renameCollection(
+                    new MongoNamespace(database, collectionArquivo), new RenameCollectionOptions().dropTarget(true));
+            logger.info("Carga publicada em {} arquivada em {} - Processo ID: {}", alias, collectionArquivo, processoId);
+        }
+        controlMongoTemplate.updateFirst(new Query(Criteria.where("_id").is(alias)),
+                new Update().unset("arquivar"), collectionPublicacoes);
+    }
+
+    // temp_yyyyMMdd de outra data, trocando o sufixo de data do nome da collection do dia
+    private String nomeCollectionArquivo(String nomeCollectionData, String dataProcessamento, String dataArquivo) {
+        return nomeCollectionData.substring(0, nomeCollectionData.length() - dataProcessamento.length()) + dataArquivo;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.atlasdfmongodb.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sonda de saúde em segundo plano: envia ping a cada cluster em intervalo fixo e mantém o último
+ * resultado e um histograma de latência por cluster. Os endpoints de health servem este estado em
+ * cache em vez de consultar os bancos a cada requisição.
+ */
+@Service
+public class SondaSaudeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SondaSaudeService.class);
+
+    public static final String PRINCIPAL = "principal";
+    public static final String FLAT = "flat";
+    public static final String CONTROLE = "controle";
+
+    @Autowired
+    @Qualifier("primaryMongoTemplate")
+    private MongoTemplate primaryMongoTemplate;
+
+    @Autowired
+    @Qualifier("flatMongoTemplate")
+    private MongoTemplate flatMongoTemplate;
+
+    @Autowired
+    @Qualifier("controlMongoTemplate")
+    private MongoTemplate controlMongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.health.max-staleness-seconds:60}")
+    private long maximoDefasagemSegundos;
+
+    private final Map<String, Sonda> sondas = new LinkedHashMap<>();
+
+    // Um ping por cluster em paralelo: um cluster lento não atrasa os demais nem o scheduler
+    private final ExecutorService executor = Executors.newFixedThreadPool(3, runnable -> {
+        Thread thread = new Thread(runnable, "sonda-saude");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void inicializar() {
+        registrar(PRINCIPAL, primaryMongoTemplate);
+        registrar(FLAT, flatMongoTemplate);
+        registrar(CONTROLE, controlMongoTemplate);
+    }
+
+    private void registrar(String cluster, MongoTemplate template) {
+        Timer latencia = Timer.builder("mongodb.health.ping")
+                .description("Latência do ping da sonda de saúde")
+                .tag("cluster", cluster)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        sondas.put(cluster, new Sonda(cluster, template, latencia));
+    }
+
+    /**
+     * Dispara o ping de cada cluster; um cluster cujo ping anterior ainda não respondeu é ignorado
+     * nesta rodada e passa a ser reportado como defasado
+     */
+    @Scheduled(fixedDelayString = "${app.health.probe-interval-seconds:10}", timeUnit = TimeUnit.SECONDS)
+    public void sondar() {
+        for (Sonda sonda : sondas.values()) {
+            if (sonda.emAndamento.compareAndSet(false, true)) {
+                executor.execute(() -> executarPing(sonda));
+            }
+        }
+    }
+
+    private void executarPing(Sonda sonda) {
+        long inicio = System.nanoTime();
+        try {
+            sonda.template.getDb().runCommand(new Document("ping", 1));
+            long duracao = System.nanoTime() - inicio;
+            sonda.latencia.record(duracao, TimeUnit.NANOSECONDS);
+            sonda.ultimo = new Resultado("UP", duracao / 1_000_000, null, LocalDateTime.now());
+            sonda.ultimoSucesso = sonda.ultimo.dataVerificacao();
+        } catch (Exception e) {
+            long duracao = System.nanoTime() - inicio;
+            sonda.ultimo = new Resultado("DOWN", duracao / 1_000_000, e.getMessage(), LocalDateTime.now());
+            logger.warn("Ping sem sucesso no cluster {}: {}", sonda.cluster, e.getMessage());
+        } finally {
+            sonda.emAndamento.set(false);
+        }
+    }
+
+    /**
+     * Indica se o cluster está UP segundo o último resultado dentro do limite de defasagem
+     */
+    public boolean isSaudavel(String cluster) {
+        return "UP".equals(obterEstado(cluster).get("status"));
+    }
+
+    /**
+     * Último resultado do cluster com os percentis de latência. Sem resultado ou com resultado mais
+     * antigo que app.health.max-staleness-seconds o status é DOWN.
+     */
+    public Map<String, Object> obterEstado(String cluster) {
+        Sonda sonda = sondas.get(cluster);
+        Map<String, Object> estado = new HashMap<>();
+        if (sonda == null) {
+            estado.put("status", "DOWN");
+            estado.put("error", "Cluster desconhecido: " + cluster);
+            return estado;
+        }
+
+        Resultado ultimo = sonda.ultimo;
+        if (ultimo == null) {
+            estado.put("status", "DOWN");
+            estado.put("error", "Nenhuma verificação concluída");
+            estado.put("latencia", latencia(sonda));
+            return estado;
+        }
+
+        long idadeSegundos = Duration.between(ultimo.dataVerificacao(), LocalDateTime.now()).toSeconds();
+        boolean defasado = idadeSegundos > maximoDefasagemSegundos;
+
+        estado.put("status", defasado ? "DOWN" : ultimo.status());
+        estado.put("stale", defasado);
+        estado.put("checked_at", ultimo.dataVerificacao());
+        estado.put("age_seconds", idadeSegundos);
+        estado.put("ping_ms", ultimo.latenciaMs());
+        estado.put("last_success", sonda.ultimoSucesso);
+        estado.put("latencia", latencia(sonda));
+        if (defasado) {
+            estado.put("error", "Última verificação há " + idadeSegundos + "s (limite " + maximoDefasagemSegundos + "s)");
+        } else if (ultimo.erro() != null) {
+            estado.put("error", ultimo.erro());
+        }
+        return estado;
+    }
+
+    private Map<String, Object> latencia(Sonda sonda) {
+        HistogramSnapshot snapshot = sonda.latencia.takeSnapshot();
+        Map<String, Object> latencia = new HashMap<>();
+        latencia.put("count", snapshot.count());
+        latencia.put("max_ms", arredondar(snapshot.max(TimeUnit.MILLISECONDS)));
+        latencia.put("mean_ms", arredondar(snapshot.mean(TimeUnit.MILLISECONDS)));
+        for (ValueAtPercentile percentil : snapshot.percentileValues()) {
+            latencia.put("p" + Math.round(percentil.percentile() * 100) + "_ms",
+                    arredondar(percentil.value(TimeUnit.MILLISECONDS)));
+        }
+        return latencia;
+    }
+
+    private double arredondar(double valor) {
+        return Math.round(valor * 100.0) / 100.0;
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    private record Resultado(String status, long latenciaMs, String erro, LocalDateTime dataVerificacao) {
+    }
+
+    private static class Sonda {
+
+        private final String cluster;
+        private final MongoTemplate template;
+        private final Timer latencia;
+        private final AtomicBoolean emAndamento = new AtomicBoolean();
+        private volatile Resultado ultimo;
+        private volatile LocalDateTime ultimoSucesso;
+
+        Sonda(String cluster, MongoTemplate template, Timer latencia) {
+            this.cluster = cluster;
+            this.template = template;
+            this.latencia = latencia;
+        }
+    }
+}